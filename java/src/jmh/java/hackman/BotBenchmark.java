@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * hackman.BotBenchmark
+ *
+ * Measures the throughput of the parts of a turn on each of the Boards:
+ * parsing the field, the searches on their own (bypassing the cache of
+ * the state), and a player's analysis up to its paths and its move.
+ *
+ * Run with "gradle jmh", which adds the gc profiler for the allocation
+ * rate and writes the results to build/reports/jmh/results.json.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BotBenchmark {
+
+    /**
+     * A board, parsed once, with the targets and threats of my player.
+     */
+    @org.openjdk.jmh.annotations.State(Scope.Thread)
+    public static class Board {
+
+        @Param
+        public Boards board;
+
+        Game game;
+        State state;
+        Search search;
+        Point origin;
+        Set<Point> targets;
+        Map<Point, Integer> threats;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            this.game    = new Game(Boards.WIDTH, Boards.HEIGHT, 0);
+            this.state   = new State(this.board.field, this.board.newPlayers(), null, this.game);
+            this.search  = this.game.getSearch(this.state.getMaze());
+            this.origin  = this.state.getMyPlayer().getPosition();
+            this.threats = this.state.getEnemyPositions();
+
+            this.targets = new HashSet<>(this.state.getSnippetPositions());
+            this.targets.addAll(this.state.getWeaponPositions());
+        }
+    }
+
+    /**
+     * A new state of the board for every call, so that nothing the players
+     * worked out before is reused.
+     */
+    @org.openjdk.jmh.annotations.State(Scope.Thread)
+    public static class Turn {
+
+        State state;
+
+        @Setup(Level.Invocation)
+        public void setUp(Board board) {
+            this.state = new State(board.board.field, board.board.newPlayers(), null, board.game);
+        }
+    }
+
+    @Benchmark
+    public State newState(Board board) {
+        return new State(board.board.field, board.board.newPlayers(), null, board.game);
+    }
+
+    @Benchmark
+    public List<Path> findShortestPaths(Board board) {
+        return board.search.findShortestPaths(board.state, board.origin, board.targets, board.threats, 0, null);
+    }
+
+    @Benchmark
+    public List<Path> findShortestPathsPerDirection(Board board) {
+        return board.search.findShortestPathsPerDirection(board.state, board.origin, board.targets, board.threats, 0, null);
+    }
+
+    @Benchmark
+    public List<Path> getPaths(Turn turn) {
+        return turn.state.getMyPlayer().getPaths();
+    }
+
+    @Benchmark
+    public Move doMove(Turn turn) {
+        return turn.state.getMyPlayer().doMove();
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * hackman.ArrivalTimes
+ *
+ * The earliest round in which any of the enemy bugs can reach each cell,
+ * found by a single breadth-first search from all of them at once.
+ *
+ * Bugs do not turn back unless they are in a dead end, so the search runs
+ * over cells paired with the move that was made to get there. A bug's
+ * first move is inferred from where it was in the previous state: if
+ * exactly one of its neighbours had a bug then, it came from there. The
+ * same graph searched backwards from a cell gives how long a bug would
+ * take to get there from anywhere.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+class ArrivalTimes {
+
+    private static final Move[] MOVES = Move.values();
+    static final int UNKNOWN = Move.PASS.ordinal();
+
+    private ArrivalTimes() {
+    }
+
+    /**
+     * Finds the arrival times, using the given arrays for the search so
+     * that they can be reused from one state to the next.
+     *
+     * @param times   A buffer of at least nrNodes(maze) elements, which gets
+     *                the arrival time for each node
+     * @param sources A buffer of at least nrNodes(maze) elements, which gets
+     *                the cell of the bug that got to each node first
+     * @param queue   A buffer of at least nrNodes(maze) elements
+     * @return The arrival time for each cell, or Maze.UNREACHABLE if no
+     *         bug can get there
+     */
+    static int[] ofEnemies(State state, Maze maze, int[] times, int[] sources, int[] queue) {
+        ofBugs(state, maze, state.getEnemyPositions().keySet(), times, sources, queue);
+        return perCell(maze, times);
+    }
+
+    /**
+     * Finds the arrival times of the bugs at the given positions for each
+     * cell and heading, in a single search from all of them. Each node
+     * also gets the cell of the bug that got there first.
+     *
+     * @param times   A buffer of at least nrNodes(maze) elements, which gets the
+     *                arrival time for each node = cell * nrHeadings + heading
+     * @param sources A buffer of at least nrNodes(maze) elements
+     * @param queue   A buffer of at least nrNodes(maze) elements
+     */
+    static void ofBugs(State state, Maze maze, Collection<Point> positions, int[] times, int[] sources, int[] queue) {
+        int nrHeadings = MOVES.length;
+        int head = 0;
+        int tail = 0;
+        Arrays.fill(times, 0, nrNodes(maze), Maze.UNREACHABLE);
+
+        Map<Point, Integer> prevEnemies = state.getPreviousEnemyPositions();
+        for (Point pos : positions) {
+            int node = maze.cell(pos) * nrHeadings + heading(state, pos, prevEnemies);
+            if (times[node] != 0) {
+                times[node] = 0;
+                sources[node] = maze.cell(pos);
+                queue[tail++] = node;
+            }
+        }
+
+        while (head < tail) {
+            int node = queue[head++];
+            int cell = node / nrHeadings;
+            int heading = node % nrHeadings;
+            Move[] validMoves = state.validMoves(cell);
+            boolean canGoOn = canGoOn(validMoves, heading);
+
+            for (Move move : validMoves) {
+                // Turning back is only possible in a dead end
+                if (canGoOn && isReverse(move, heading))
+                    continue;
+
+                int next = maze.point(cell).neighbour(move).cell() * nrHeadings + move.ordinal();
+                if (times[next] == Maze.UNREACHABLE) {
+                    times[next] = times[node] + 1;
+                    sources[next] = sources[node];
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds how many rounds a bug needs to get to the target from each
+     * cell and heading, by searching backwards from the target.
+     *
+     * @param times A buffer of at least nrNodes(maze) elements, which gets the
+     *              time for each node = cell * nrHeadings + heading
+     * @param queue A buffer of at least nrNodes(maze) elements
+     */
+    static void toCell(State state, Maze maze, int target, int[] times, int[] queue) {
+        int nrHeadings = MOVES.length;
+        int head = 0;
+        int tail = 0;
+        Arrays.fill(times, 0, nrNodes(maze), Maze.UNREACHABLE);
+
+        for (int heading = 0; heading < nrHeadings; heading++) {
+            times[target * nrHeadings + heading] = 0;
+            queue[tail++] = target * nrHeadings + heading;
+        }
+
+        while (head < tail) {
+            int node = queue[head++];
+            int move = node % nrHeadings;
+            if (move == UNKNOWN)
+                continue;
+
+            // The bug made the move from the cell behind, with any heading that allows it
+            int cell = maze.neighbour(node / nrHeadings, reverse(MOVES[move]));
+            if (cell < 0)
+                continue;
+
+            for (int heading = 0; heading < nrHeadings; heading++) {
+                int prev = cell * nrHeadings + heading;
+                if (times[prev] == Maze.UNREACHABLE && canMove(state, cell, heading, MOVES[move])) {
+                    times[prev] = times[node] + 1;
+                    queue[tail++] = prev;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param times The time for each node, as found by ofBugs()
+     * @return The earliest time for each cell, whatever the heading
+     */
+    static int[] perCell(Maze maze, int[] times) {
+        int nrCells = maze.getWidth() * maze.getHeight();
+        int nrHeadings = MOVES.length;
+        int[] arrivalTimes = new int[nrCells];
+        for (int cell = 0; cell < nrCells; cell++) {
+            int time = Maze.UNREACHABLE;
+            for (int heading = 0; heading < nrHeadings; heading++)
+                time = Math.min(time, times[cell * nrHeadings + heading]);
+            arrivalTimes[cell] = time;
+        }
+        return arrivalTimes;
+    }
+
+    /**
+     * @return The node of a cell and heading in the searches
+     */
+    static int node(int cell, int heading) {
+        return cell * MOVES.length + heading;
+    }
+
+    /**
+     * @return The number of nodes that the search runs over
+     */
+    static int nrNodes(Maze maze) {
+        return maze.getWidth() * maze.getHeight() * MOVES.length;
+    }
+
+    /**
+     * Infers the last move of the bug at the given position.
+     *
+     * @return The Move ordinal, or UNKNOWN
+     */
+    static int heading(State state, Point pos, Map<Point, Integer> prevEnemies) {
+        if (prevEnemies.isEmpty() || prevEnemies.containsKey(pos))
+            return UNKNOWN;
+
+        int heading = UNKNOWN;
+        for (Move move : state.validMoves(state.cell(pos))) {
+            if (prevEnemies.containsKey(pos.neighbour(move))) {
+                if (heading != UNKNOWN)
+                    return UNKNOWN;
+
+                heading = reverse(move).ordinal();
+            }
+        }
+        return heading;
+    }
+
+    /**
+     * @return True if a bug at the cell with the given heading can make the
+     *         move, which is any valid move but turning back outside of a
+     *         dead end
+     */
+    static boolean canMove(State state, int cell, int heading, Move move) {
+        Move[] validMoves = state.validMoves(cell);
+        boolean isValid = false;
+        for (Move m : validMoves)
+            isValid |= m == move;
+
+        return isValid && (!isReverse(move, heading) || !canGoOn(validMoves, heading));
+    }
+
+    private static boolean canGoOn(Move[] validMoves, int heading) {
+        for (Move move : validMoves) {
+            if (!isReverse(move, heading))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isReverse(Move move, int heading) {
+        return heading != UNKNOWN && reverse(move).ordinal() == heading;
+    }
+
+    static Move reverse(Move move) {
+        switch (move) {
+            case UP:    return Move.DOWN;
+            case DOWN:  return Move.UP;
+            case LEFT:  return Move.RIGHT;
+            case RIGHT: return Move.LEFT;
+            default:    return Move.PASS;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+/**
+ * hackman.BugModel
+ *
+ * How the engine moves a bug (see ChaseWithChanceEnemyAI). A bug never
+ * turns back unless it is stuck, and does not go back into the bugs
+ * source once it is out. Where there is more than one way to go, it
+ * chases the nearest player with a chance that grows every round, and
+ * takes a random way otherwise.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+class BugModel {
+
+    private static final double CHASE_INITIAL = 0.2;
+    private static final double CHASE_GROWTH  = 0.8; // divided over the match
+
+    private static final Move[] MOVES = Move.values();
+
+    private BugModel() {
+    }
+
+    /**
+     * @param round     The current round
+     * @param maxRounds The number of rounds in the match
+     * @return The chance that a bug chases a player in the given round
+     */
+    static double chaseChance(int round, int maxRounds) {
+        double chance = CHASE_INITIAL + (round - 1) * CHASE_GROWTH / Math.max(1, maxRounds);
+        return Math.max(0.0, Math.min(1.0, chance));
+    }
+
+    /**
+     * Finds the ways that a bug can go without turning back.
+     *
+     * @param maze      The maze
+     * @param cell      The cell of the bug
+     * @param heading   The ordinal of the bug's last move, or ArrivalTimes.UNKNOWN
+     * @param available Receives the moves, needs room for four
+     * @return The number of moves found
+     */
+    static int availableMoves(Maze maze, int cell, int heading, Move[] available) {
+        Point pos = maze.point(cell);
+        Move back = ArrivalTimes.reverse(MOVES[heading]);
+
+        int nrAvailable = 0;
+        for (Move move : State.searchOrder()) {
+            int next = maze.neighbour(cell, move);
+            if (next < 0 || move == back)
+                continue;
+
+            // Bugs don't go back into the bugs source
+            Point nextPos = maze.point(next);
+            if (State.isEntrance(nextPos.x, nextPos.y) && !State.isEntrance(pos.x, pos.y))
+                continue;
+
+            available[nrAvailable++] = move;
+        }
+        return nrAvailable;
+    }
+
+    /**
+     * @return The move that a stuck bug makes, or PASS if it has no heading
+     */
+    static Move turnBack(int heading) {
+        return ArrivalTimes.reverse(MOVES[heading]);
+    }
+
+    /**
+     * @param players The cells of the players
+     * @return The available move that gets the bug nearest to a player
+     */
+    static Move chase(Maze maze, int cell, Move[] available, int nrAvailable, int[] players) {
+        Move bestMove = available[0];
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < nrAvailable; i++) {
+            int next = maze.neighbour(cell, available[i]);
+            for (int player : players) {
+                int distance = maze.distance(next, player);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    bestMove = available[i];
+                }
+            }
+        }
+        return bestMove;
+    }
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * hackman.Expectimax
+ *
+ * Looks ahead a number of rounds over both players' moves at once. I pick
+ * the move with the best expected value, the opponent is taken to make
+ * any of its valid moves with equal chance, and every bug that can get
+ * near a player in time is a chance node that moves as the engine moves
+ * it (see BugModel). Bugs that are too far away to matter stay put.
+ *
+ * The search deepens one round at a time until the deadline, trying my
+ * best move of the previous round first. Values are kept in a fixed-size
+ * transposition table keyed by a 64-bit hash of the node and its round,
+ * which uses the Zobrist keys of the maze for the players and items.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+class Expectimax {
+
+    /**
+     * The outcome of a search.
+     */
+    static class Result {
+        final Move move;
+        final int depth;    // rounds, 0 if not even one round was searched
+        final long nrNodes;
+        final long nanos;
+
+        Result(Move move, int depth, long nrNodes, long nanos) {
+            this.move    = move;
+            this.depth   = depth;
+            this.nrNodes = nrNodes;
+            this.nanos   = nanos;
+        }
+
+        double nodesPerSecond() {
+            return this.nanos > 0 ? this.nrNodes * 1e9 / this.nanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s depth=%d nodes=%d (%.0f nodes/s)",
+                    this.move, this.depth, this.nrNodes, this.nodesPerSecond());
+        }
+    }
+
+    /**
+     * The positions of the players, the bugs and the items taken so far.
+     */
+    private static class Node {
+        final int[] players;
+        final int[] snippets;
+        final boolean[] armed;
+        final int[] bugs;
+        final int[] headings;
+        int nrBugs;
+        long taken; // item index : picked up
+
+        Node(int nrBugs) {
+            this.players  = new int[2];
+            this.snippets = new int[2];
+            this.armed    = new boolean[2];
+            this.bugs     = new int[nrBugs];
+            this.headings = new int[nrBugs];
+            this.nrBugs   = nrBugs;
+        }
+
+        Node(Node node) {
+            this.players  = node.players.clone();
+            this.snippets = node.snippets.clone();
+            this.armed    = node.armed.clone();
+            this.bugs     = Arrays.copyOf(node.bugs, node.nrBugs);
+            this.headings = Arrays.copyOf(node.headings, node.nrBugs);
+            this.nrBugs   = node.nrBugs;
+            this.taken    = node.taken;
+        }
+    }
+
+    // Engine behaviour, see BookingGameProcessor
+    private static final int SNIPPET_LOSS = 4;
+
+    static final int MAX_DEPTH              = 32;   // rounds
+    private static final int MAX_ITEMS      = 64;   // bits in Node.taken
+    private static final int TABLE_SIZE     = 1 << 16;
+    private static final int CHECK_INTERVAL = 1024; // nodes between deadline checks
+
+    // Evaluation, in snippets
+    private static final double WEAPON_VALUE   = 1.0;
+    private static final double DISTANCE_VALUE = 0.1; // per move to the nearest item
+    private static final double DANGER_VALUE   = 2.0; // unarmed next to a bug
+    private static final int MAX_DISTANCE      = 20;
+
+    private static final int NR_HEADINGS = Move.values().length;
+
+    private final Maze maze;
+    private final int maxRounds;
+    private final int nrCells;
+
+    // Keys for the node hash. Bugs have a key per heading as well as cell.
+    private final Zobrist zobrist;
+    private final long[] bugKeys;     // cell * nrHeadings + heading
+    private long[] itemKeys;          // item index : key of the item's cell
+
+    // Transposition table
+    private final long[] tableKeys     = new long[TABLE_SIZE];
+    private final double[] tableValues = new double[TABLE_SIZE];
+    private final byte[] tableDepths   = new byte[TABLE_SIZE];
+    private final int[] tableSearches  = new int[TABLE_SIZE];
+    private int searchNr = 0;
+
+    // Working state of a search
+    private State state;
+    private int myId;
+    private int round;
+    private int rootDepth;
+    private int[] itemIndex;  // cell : item index, or -1
+    private boolean[] isWeapon; // item index : weapon rather than snippet
+    private int[] itemCells;
+    private long deadline;
+    private long nrNodes;
+    private boolean isAborted;
+
+    Expectimax(Maze maze, int maxRounds) {
+        this.maze      = maze;
+        this.maxRounds = maxRounds;
+        this.nrCells   = maze.getWidth() * maze.getHeight();
+
+        this.zobrist = maze.zobrist();
+        this.bugKeys = new SplittableRandom(0x5EED).longs(this.nrCells * NR_HEADINGS).toArray();
+    }
+
+    boolean fits(Maze maze) {
+        return this.maze == maze;
+    }
+
+    /**
+     * Searches deeper and deeper until the deadline.
+     *
+     * @param state     The current state
+     * @param round     The current round
+     * @param preferred The move to try first, which also wins ties
+     * @param deadline  The System.nanoTime() by which to stop, or NO_DEADLINE
+     * @param maxDepth  The number of rounds after which to stop
+     * @return The best move of the deepest search that was finished
+     */
+    Result search(State state, int round, Move preferred, long deadline, int maxDepth) {
+        long start = System.nanoTime();
+        this.init(state, round, deadline);
+        Node root = this.createRoot();
+
+        List<Move> moves = new ArrayList<>();
+        moves.add(preferred);
+        for (Move move : this.getMoves(root.players[this.myId], true)) {
+            if (move != preferred)
+                moves.add(move);
+        }
+
+        Move bestMove = preferred;
+        int depthReached = 0;
+        for (int depth = 1; depth <= maxDepth && !this.isAborted; depth++) {
+            this.rootDepth = depth;
+            Map<Move, Double> values = new EnumMap<>(Move.class);
+            for (int i = 0; i < moves.size() && !this.isAborted; i++)
+                values.put(moves.get(i), this.opponentNode(root, moves.get(i), depth));
+
+            if (this.isAborted)
+                break;
+
+            // Best first for the next round, keeping the order of equal moves
+            moves.sort((a, b) -> Double.compare(values.get(b), values.get(a)));
+            bestMove = moves.get(0);
+            depthReached = depth;
+        }
+
+        this.state = null;
+        return new Result(bestMove, depthReached, this.nrNodes, System.nanoTime() - start);
+    }
+
+    private void init(State state, int round, long deadline) {
+        this.state     = state;
+        this.myId      = state.getMyPlayer().getId();
+        this.round     = round;
+        this.deadline  = deadline;
+        this.nrNodes   = 0;
+        this.isAborted = false;
+        this.searchNr++;
+
+        List<Integer> cells = new ArrayList<>();
+        List<Boolean> weapons = new ArrayList<>();
+        for (Point pos : state.getWeaponPositions()) {
+            cells.add(this.maze.cell(pos));
+            weapons.add(true);
+        }
+        for (Point pos : state.getSnippetPositions()) {
+            cells.add(this.maze.cell(pos));
+            weapons.add(false);
+        }
+
+        int nrItems = Math.min(MAX_ITEMS, cells.size());
+        this.itemIndex = new int[this.nrCells];
+        this.itemCells = new int[nrItems];
+        this.isWeapon  = new boolean[nrItems];
+        this.itemKeys  = new long[nrItems];
+        Arrays.fill(this.itemIndex, -1);
+        for (int i = 0; i < nrItems; i++) {
+            int cell = cells.get(i);
+            this.itemIndex[cell] = i;
+            this.itemCells[i] = cell;
+            this.isWeapon[i]  = weapons.get(i);
+            this.itemKeys[i]  = this.isWeapon[i] ? this.zobrist.weapon(cell) : this.zobrist.snippet(cell);
+        }
+    }
+
+    private Node createRoot() {
+        List<Integer> bugs = new ArrayList<>();
+        List<Integer> headings = new ArrayList<>();
+        Map<Point, Integer> prevEnemies = this.state.getPreviousEnemyPositions();
+        this.state.getEnemyPositions().forEach((pos, count) -> {
+            int heading = ArrivalTimes.heading(this.state, pos, prevEnemies);
+            for (int i = 0; i < count; i++) {
+                bugs.add(this.maze.cell(pos));
+                headings.add(heading);
+            }
+        });
+
+        Node root = new Node(bugs.size());
+        for (int i = 0; i < bugs.size(); i++) {
+            root.bugs[i]     = bugs.get(i);
+            root.headings[i] = headings.get(i);
+        }
+        for (int id = 0; id < 2; id++) {
+            Player player = this.state.getPlayer(id);
+            root.players[id]  = this.maze.cell(player.getPosition());
+            root.snippets[id] = player.getSnippets();
+            root.armed[id]    = player.hasWeapon();
+        }
+        return root;
+    }
+
+    private Move[] getMoves(int cell, boolean canPass) {
+        Set<Move> validMoves = this.state.getValidMoves(this.maze.point(cell));
+        Move[] moves = validMoves.toArray(new Move[validMoves.size() + (canPass ? 1 : 0)]);
+        if (canPass)
+            moves[moves.length - 1] = Move.PASS;
+
+        return moves.length > 0 ? moves : new Move[] {Move.PASS};
+    }
+
+    /**
+     * My move: the best of the expected values of my moves.
+     */
+    private double maxNode(Node node, int depth) {
+        if (depth == 0)
+            return this.evaluate(node);
+
+        if (++this.nrNodes % CHECK_INTERVAL == 0 && this.deadline != Player.NO_DEADLINE &&
+                System.nanoTime() - this.deadline >= 0)
+            this.isAborted = true;
+        if (this.isAborted)
+            return 0;
+
+        // The chance of a bug chasing depends on the round, which differs between the passes
+        long hash = this.hash(node, this.round + this.rootDepth - depth);
+        int slot = (int) (hash & (TABLE_SIZE - 1));
+        if (this.tableSearches[slot] == this.searchNr && this.tableKeys[slot] == hash &&
+                this.tableDepths[slot] >= depth)
+            return this.tableValues[slot];
+
+        double best = Double.NEGATIVE_INFINITY;
+        for (Move move : this.getMoves(node.players[this.myId], true))
+            best = Math.max(best, this.opponentNode(node, move, depth));
+
+        if (!this.isAborted) {
+            this.tableSearches[slot] = this.searchNr;
+            this.tableKeys[slot]     = hash;
+            this.tableDepths[slot]   = (byte) depth;
+            this.tableValues[slot]   = best;
+        }
+        return best;
+    }
+
+    /**
+     * The opponent's move: the average over its moves.
+     */
+    private double opponentNode(Node node, Move myMove, int depth) {
+        int oppId = 1 - this.myId;
+        Move[] moves = this.getMoves(node.players[oppId], false);
+
+        double total = 0;
+        for (Move oppMove : moves) {
+            Node next = new Node(node);
+            next.players[this.myId] = this.step(node.players[this.myId], myMove);
+            next.players[oppId]     = this.step(node.players[oppId], oppMove);
+            total += this.chanceNode(next, node, 0, depth);
+        }
+        return total / moves.length;
+    }
+
+    /**
+     * The moves of the bugs from the given one on, each weighted by its
+     * chance. The players have already moved in the next node.
+     */
+    private double chanceNode(Node next, Node prev, int bug, int depth) {
+        if (bug == next.nrBugs)
+            return this.maxNode(this.resolve(next, prev), depth - 1);
+
+        int cell    = next.bugs[bug];
+        int heading = next.headings[bug];
+
+        // A bug that can't get near a player within the horizon may as well stay
+        int distance = Math.min(this.maze.distance(cell, next.players[0]), this.maze.distance(cell, next.players[1]));
+        if (distance > 2 * depth + 1)
+            return this.chanceNode(next, prev, bug + 1, depth);
+
+        Move[] available = new Move[4];
+        int nrAvailable = BugModel.availableMoves(this.maze, cell, heading, available);
+        if (nrAvailable <= 1) {
+            Move move = nrAvailable == 0 ? BugModel.turnBack(heading) : available[0];
+            this.moveBug(next, bug, move);
+            double value = this.chanceNode(next, prev, bug + 1, depth);
+            next.bugs[bug] = cell;
+            next.headings[bug] = heading;
+            return value;
+        }
+
+        int round = this.round + this.rootDepth - depth;
+        double chase = BugModel.chaseChance(round, this.maxRounds);
+        Move chaseMove = BugModel.chase(this.maze, cell, available, nrAvailable, next.players);
+
+        double value = 0;
+        for (int i = 0; i < nrAvailable; i++) {
+            double chance = (1 - chase) / nrAvailable + (available[i] == chaseMove ? chase : 0);
+            this.moveBug(next, bug, available[i]);
+            value += chance * this.chanceNode(next, prev, bug + 1, depth);
+        }
+        next.bugs[bug] = cell;
+        next.headings[bug] = heading;
+        return value;
+    }
+
+    private void moveBug(Node node, int bug, Move move) {
+        int next = move != Move.PASS ? this.maze.neighbour(node.bugs[bug], move) : -1;
+        if (next >= 0) {
+            node.bugs[bug] = next;
+            node.headings[bug] = move.ordinal();
+        }
+    }
+
+    private int step(int cell, Move move) {
+        if (move == Move.PASS)
+            return cell;
+
+        Point pos = this.maze.point(cell);
+        return this.state.getValidMoves(pos).contains(move) ? pos.neighbour(move).cell() : cell;
+    }
+
+    /**
+     * Picks up the items and sorts out the collisions after everything has
+     * moved, in the order of the engine.
+     */
+    private Node resolve(Node next, Node prev) {
+        Node node = new Node(next);
+
+        for (int id = 0; id < 2; id++) {
+            int item = this.itemIndex[node.players[id]];
+            if (item < 0 || (node.taken & 1L << item) != 0)
+                continue;
+
+            node.taken |= 1L << item;
+            if (this.isWeapon[item])
+                node.armed[id] = true;
+            else
+                node.snippets[id]++;
+        }
+
+        for (int id = 0; id < 2; id++) {
+            for (int i = 0; i < node.nrBugs; i++) {
+                boolean isSwap = node.players[id] == prev.bugs[i] && node.bugs[i] == prev.players[id];
+                if (!isSwap && node.players[id] != node.bugs[i])
+                    continue;
+
+                if (node.armed[id])
+                    node.armed[id] = false;
+                else
+                    node.snippets[id] -= SNIPPET_LOSS;
+
+                // The bug is killed, the last one takes its place
+                node.nrBugs--;
+                node.bugs[i]     = node.bugs[node.nrBugs];
+                node.headings[i] = node.headings[node.nrBugs];
+                prev = new Node(prev);
+                prev.bugs[i]     = prev.bugs[node.nrBugs];
+                i--;
+            }
+        }
+
+        boolean isSwap = node.players[0] == prev.players[1] && node.players[1] == prev.players[0];
+        if ((isSwap || node.players[0] == node.players[1]) && node.armed[0] != node.armed[1]) {
+            int loser = node.armed[0] ? 1 : 0;
+            node.snippets[loser] -= SNIPPET_LOSS;
+            node.armed[1 - loser] = false;
+        }
+        return node;
+    }
+
+    /**
+     * @return My snippets less the opponent's, adjusted for weapons, the
+     *         nearest items and the bugs next to unarmed players
+     */
+    private double evaluate(Node node) {
+        int oppId = 1 - this.myId;
+        double value = node.snippets[this.myId] - node.snippets[oppId];
+        value += WEAPON_VALUE * ((node.armed[this.myId] ? 1 : 0) - (node.armed[oppId] ? 1 : 0));
+        value += DISTANCE_VALUE * (this.nearestItem(node, oppId) - this.nearestItem(node, this.myId));
+        value += DANGER_VALUE * (this.danger(node, oppId) - this.danger(node, this.myId));
+        return value;
+    }
+
+    private int nearestItem(Node node, int id) {
+        int nearest = MAX_DISTANCE;
+        for (int i = 0; i < this.itemCells.length; i++) {
+            if ((node.taken & 1L << i) == 0)
+                nearest = Math.min(nearest, this.maze.distance(node.players[id], this.itemCells[i]));
+        }
+        return nearest;
+    }
+
+    private int danger(Node node, int id) {
+        if (node.armed[id])
+            return 0;
+
+        for (int i = 0; i < node.nrBugs; i++) {
+            if (this.maze.distance(node.players[id], node.bugs[i]) <= 1)
+                return 1;
+        }
+        return 0;
+    }
+
+    private long hash(Node node, int round) {
+        long hash = round * 0x9E3779B97F4A7C15L;
+        for (long taken = node.taken; taken != 0; taken &= taken - 1)
+            hash ^= this.itemKeys[Long.numberOfTrailingZeros(taken)];
+        for (int id = 0; id < 2; id++) {
+            hash ^= this.zobrist.player(id, node.players[id]);
+            if (node.armed[id])
+                hash ^= this.zobrist.armed(id);
+        }
+
+        // Added rather than xor-ed, so that two bugs in the same place don't cancel out
+        for (int i = 0; i < node.nrBugs; i++)
+            hash += this.bugKeys[node.bugs[i] * NR_HEADINGS + node.headings[i]];
+
+        hash ^= (node.snippets[0] * 31L + node.snippets[1]) * 0xC2B2AE3D27D4EB4FL;
+        return hash;
+    }
+}
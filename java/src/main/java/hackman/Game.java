@@ -19,7 +19,11 @@
 
 package hackman;
 
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * hackman.Game
@@ -34,24 +38,94 @@ public class Game {
         System.err.print(game.toString());
     }
 
-    private Scanner scanner;
-    private Map<String, Map<String, String>> updates;
+    private ProtocolReader reader;
+    private PrintStream out;
     private LinkedList<State> states;
+    private int historySize = DEFAULT_HISTORY_SIZE;
+    private Maze maze = null;
+    private final ThreadLocal<Search> searches = new ThreadLocal<>();
+    private boolean isConcurrent = CONCURRENT;
+    private ExecutorService executor = null;
+    private Rollouts rollouts = null;
+    private Expectimax expectimax = null;
+    private Ponderer ponderer = null;
+    private Warmup warmup = null;
+    private final Metrics metrics = new Metrics();
+
+    // Time kept back for reading the input and writing the move
+    private static final int SAFETY_MARGIN = 20; // ms
+
+    // The timebank is drawn on when a threat can get to the player this soon
+    private static final int THREAT_RANGE = 6; // rounds
+
+    // The number of states kept, including the current one
+    static final int DEFAULT_HISTORY_SIZE = 2;
+
+    // The opponent's analysis runs on another thread when the bot is started
+    // with -Dhackman.concurrent=true
+    private static final boolean CONCURRENT = Boolean.getBoolean("hackman.concurrent");
+
+    // The next states are predicted and analysed while waiting for the engine
+    // when the bot is started with -Dhackman.ponder=true
+    private static final boolean PONDER = Boolean.getBoolean("hackman.ponder");
+
+    // The JIT compiler is warmed up for at most this many ms while the
+    // settings come in, when the bot is started with -Dhackman.warmup=<ms>
+    private static final int WARMUP = Integer.getInteger("hackman.warmup", 0);
+
+    // Look-ahead is only used when the bot is started with -Dhackman.expectimax=true
+    private static final boolean USE_EXPECTIMAX = Boolean.getBoolean("hackman.expectimax");
+
+    // Rollouts are only used when the bot is started with -Dhackman.rollouts=true
+    private static final boolean USE_ROLLOUTS = Boolean.getBoolean("hackman.rollouts");
+    private static final int ROLLOUT_DEPTH = 16; // rounds
+
+    // How far ahead to look when there are no deadlines
+    private static final int UNTIMED_EXPECTIMAX_DEPTH = 4; // rounds
 
     private int timebank;
     private int timePerMove;
+    private long actionTime; // System.nanoTime() of the last action request
+    private boolean isTimed = true;
     private int fieldWidth;
     private int fieldHeight;
     private int maxRounds;
+    private int round;
 
     private String[] playerNames;
     private String myName;
     private int myId;
 
+    // The updates of the current round, reused from round to round
+    private byte[][] playerWords = new byte[0][];
+    private int[] snippets = new int[0];
+    private boolean[] hasWeapon = new boolean[0];
+    private boolean[] isParalyzed = new boolean[0];
+    private byte[] field = new byte[1 << 12];
+    private int fieldLength = 0;
+
+    private static final byte[] SETTINGS     = ProtocolReader.word("settings");
+    private static final byte[] UPDATE       = ProtocolReader.word("update");
+    private static final byte[] ACTION       = ProtocolReader.word("action");
+    private static final byte[] GAME         = ProtocolReader.word("game");
+    private static final byte[] FIELD        = ProtocolReader.word("field");
+    private static final byte[] ROUND        = ProtocolReader.word("round");
+    private static final byte[] SNIPPETS     = ProtocolReader.word("snippets");
+    private static final byte[] HAS_WEAPON   = ProtocolReader.word("has_weapon");
+    private static final byte[] IS_PARALYZED = ProtocolReader.word("is_paralyzed");
+
     public Game() {
-        this.scanner = new Scanner(System.in).useDelimiter("\n");
-        this.updates = new HashMap<>();
-        this.states  = new LinkedList<>();
+        this(System.in, System.out);
+    }
+
+    /**
+     * Creates a game that reads the engine's messages from the given input
+     * and writes its moves to the given output, e.g. to replay a transcript.
+     */
+    Game(InputStream in, PrintStream out) {
+        this.reader = new ProtocolReader(in);
+        this.out    = out;
+        this.states = new LinkedList<>();
     }
 
     // For testing purposes
@@ -62,6 +136,14 @@ public class Game {
         this.myId = myId;
     }
 
+    /**
+     * Turns the deadlines of the moves on or off. Without deadlines the
+     * moves only depend on the input, e.g. to compare replays.
+     */
+    void setTimed(boolean isTimed) {
+        this.isTimed = isTimed;
+    }
+
     int getFieldWidth() {
         return this.fieldWidth;
     }
@@ -74,45 +156,232 @@ public class Game {
         return this.myId;
     }
 
+    int getTimePerMove() {
+        return this.timePerMove;
+    }
+
+    /**
+     * @return The System.nanoTime() at which the current move was requested
+     */
+    long getActionTime() {
+        return this.actionTime;
+    }
+
+    /**
+     * Sets how many states are kept. The oldest state that is kept forgets
+     * its own previous state, so that the ones before it (and the players
+     * that refer to them) can be garbage collected.
+     *
+     * @param historySize The number of states, at least 2 since the
+     *                    previous enemy positions are needed
+     */
+    void setHistorySize(int historySize) {
+        if (historySize < 2)
+            throw new IllegalArgumentException("history size must be at least 2");
+
+        this.historySize = historySize;
+    }
+
+    private void addState(State state) {
+        this.states.addFirst(state);
+        while (this.states.size() > this.historySize)
+            this.states.removeLast();
+
+        if (this.states.size() == this.historySize)
+            this.states.getLast().forgetPreviousState();
+    }
+
+    /**
+     * Gets the maze of the match, which is built from the first field that
+     * is received since the layout does not change.
+     *
+     * @param width  The width of the field
+     * @param height The height of the field
+     * @param grid   The contents of each cell of the field
+     * @return The maze with the same walls as the field
+     */
+    Maze getMaze(int width, int height, byte[] grid) {
+        if (this.maze == null || !this.maze.hasLayout(width, height, grid))
+            this.maze = new Maze(width, height, grid);
+
+        return this.maze;
+    }
+
+    /**
+     * Gets the search engine for the given maze. Each thread has its own,
+     * which is shared by the states of the match so that its buffers only
+     * need to be allocated once.
+     *
+     * @param maze The maze to search
+     * @return The search engine of the current thread
+     */
+    Search getSearch(Maze maze) {
+        Search search = this.searches.get();
+        if (search == null || !search.fits(maze)) {
+            search = new Search(maze);
+            this.searches.set(search);
+        }
+        return search;
+    }
+
+    Metrics getMetrics() {
+        return this.metrics;
+    }
+
+    void setConcurrent(boolean isConcurrent) {
+        this.isConcurrent = isConcurrent;
+    }
+
+    /**
+     * Gets the executor that the analyses of the players can run on.
+     *
+     * @return The executor, or null if the analyses run one after the other
+     */
+    ExecutorService getExecutor() {
+        if (!this.isConcurrent)
+            return null;
+
+        if (this.executor == null) {
+            this.executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "analysis");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return this.executor;
+    }
+
     public void run() {
         State state = getNextState();
         while (state != null) {
-            Move move = state.getMyPlayer().doMove();
+            if (this.ponderer != null)
+                this.ponderer.reuse(state);
+
+            long deadline = getDeadline(state);
+            Move move = state.getMyPlayer().doMove(deadline);
             if (move == null) move = Move.PASS;
-            System.out.println(move);
+            if (USE_EXPECTIMAX)
+                move = this.getExpectimaxMove(state, move, deadline);
+            if (USE_ROLLOUTS)
+                move = this.getRolloutMove(state, move, deadline);
+            this.out.println(move);
+            this.out.flush();
+            if (Metrics.ENABLED)
+                System.err.println(this.metrics.endTurn(this.round));
 
+            if (PONDER) {
+                if (this.ponderer == null)
+                    this.ponderer = new Ponderer(this);
+                this.ponderer.start(state, move);
+            }
             state = getNextState();
         }
     }
 
+    /**
+     * Searches ahead with the time that is left of the time per move,
+     * starting with the move chosen by the player.
+     *
+     * @param state    The current state
+     * @param move     The move chosen by the player
+     * @param deadline The System.nanoTime() by which the move is due
+     * @return The move to make
+     */
+    private Move getExpectimaxMove(State state, Move move, long deadline) {
+        if (this.expectimax == null || !this.expectimax.fits(this.maze))
+            this.expectimax = new Expectimax(this.maze, this.maxRounds);
+
+        Expectimax.Result result;
+        if (this.isTimed) {
+            deadline = Math.min(deadline, this.actionTime + this.timePerMove * 1000000L);
+            result = this.expectimax.search(state, this.round, move, deadline, Expectimax.MAX_DEPTH);
+        }
+        else {
+            result = this.expectimax.search(state, this.round, move, Player.NO_DEADLINE, UNTIMED_EXPECTIMAX_DEPTH);
+        }
+        if (Metrics.ENABLED)
+            System.err.println("round " + this.round + ": " + result);
+        return result.move;
+    }
+
+    /**
+     * Spends the time that is left before the deadline on rollouts, and
+     * goes with the move that gains the most snippets on average. The move
+     * that was already chosen wins any ties.
+     *
+     * @param state    The current state
+     * @param move     The move chosen by the player
+     * @param deadline The System.nanoTime() by which the move is due
+     * @return The move to make
+     */
+    private Move getRolloutMove(State state, Move move, long deadline) {
+        if (this.rollouts == null)
+            this.rollouts = new Rollouts(ROLLOUT_DEPTH, this.maxRounds);
+
+        Map<Move, Double> deltas = this.rollouts.evaluate(state, this.round, deadline);
+        Move bestMove = move;
+        double bestDelta = deltas.getOrDefault(move, Double.NEGATIVE_INFINITY);
+        for (Map.Entry<Move, Double> entry : deltas.entrySet()) {
+            if (entry.getValue() > bestDelta) {
+                bestDelta = entry.getValue();
+                bestMove = entry.getKey();
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Works out when the current move has to be decided by. The time per
+     * move is added to the timebank after every move, so it can be spent
+     * freely. A tenth of what is left in the timebank is only drawn on
+     * when a threat can get to the player within a few rounds, since that
+     * is when a better move is worth the most. This is read off the
+     * arrival times of the threats, which the safe move needs first thing
+     * anyway, so nothing slow runs before the deadline is set.
+     *
+     * @param state The current state
+     * @return The deadline as a System.nanoTime() value, or NO_DEADLINE if
+     *         the moves are not timed
+     */
+    private long getDeadline(State state) {
+        if (!this.isTimed)
+            return Player.NO_DEADLINE;
+
+        int budget = this.timePerMove;
+        Player player = state.getMyPlayer();
+        if (player.getThreatArrivalTimes()[state.cell(player.getPosition())] <= THREAT_RANGE)
+            budget += this.timebank / 10;
+        budget = Math.min(budget, this.timebank - SAFETY_MARGIN);
+        return this.actionTime + Math.max(0, budget) * 1000000L;
+    }
+
     private State getNextState() {
+        ProtocolReader reader = this.reader;
         State state = null;
 
-        state:
-        while (scanner.hasNextLine()) {
-            String line = scanner.nextLine();
-
-            if (line.length() == 0) continue;
-
-            String[] parts = line.split(" ");
-            switch (parts[0]) {
-                case "settings":
-                    this.parseSetting(parts[1], parts[2]);
-                    break;
-                case "update":
-                    this.updates.putIfAbsent(parts[1], new HashMap<>());
-                    this.updates.get(parts[1]).put(parts[2], parts[3]);
-                    break;
-                case "action":
-                    this.timebank = Integer.parseInt(parts[2]);
-
-                    state = parseUpdates(updates);
-                    this.states.addFirst(state);
-                    this.updates.clear();
-                    break state;
-                default:
-                    System.err.println("unknown command");
-                    break;
+        while (reader.nextLine()) {
+            if (reader.nrTokens() == 0) continue;
+
+            if (reader.is(0, SETTINGS)) {
+                this.parseSetting(reader.toString(1), reader.toString(2));
+            }
+            else if (reader.is(0, UPDATE)) {
+                this.parseUpdate(reader);
+            }
+            else if (reader.is(0, ACTION)) {
+                this.actionTime = System.nanoTime();
+                this.timebank = reader.toInt(2);
+                this.stopWarmup();
+                this.metrics.startTurn();
+
+                long start = Metrics.now();
+                state = this.createState();
+                this.metrics.add(Metrics.Phase.PARSE, start);
+                this.addState(state);
+                break;
+            }
+            else {
+                System.err.println("unknown command");
             }
         }
         return state;
@@ -133,15 +402,23 @@ public class Game {
                 break;
             case "field_width":
                 this.fieldWidth = Integer.parseInt(value);
+                this.startWarmup();
                 break;
             case "field_height":
                 this.fieldHeight = Integer.parseInt(value);
+                this.startWarmup();
                 break;
             case "max_rounds":
                 this.maxRounds = Integer.parseInt(value);
                 break;
             case "player_names":
                 this.playerNames = value.split(",");
+                this.playerWords = new byte[this.playerNames.length][];
+                for (int i = 0; i < this.playerNames.length; i++)
+                    this.playerWords[i] = ProtocolReader.word(this.playerNames[i]);
+                this.snippets    = new int[this.playerNames.length];
+                this.hasWeapon   = new boolean[this.playerNames.length];
+                this.isParalyzed = new boolean[this.playerNames.length];
                 break;
             case "your_bot":
                 this.myName = value;
@@ -154,25 +431,65 @@ public class Game {
         }
     }
 
-    private State parseUpdates(Map<String, Map<String, String>> updates) {
+    /**
+     * Starts warming up as soon as the size of the field is known.
+     */
+    private void startWarmup() {
+        if (WARMUP <= 0 || this.warmup != null || this.fieldWidth <= 0 || this.fieldHeight <= 0)
+            return;
+
+        this.warmup = new Warmup(this.fieldWidth, this.fieldHeight, this.myId);
+        this.warmup.start(WARMUP);
+    }
+
+    private void stopWarmup() {
+        if (this.warmup != null)
+            this.warmup.stop();
+        this.warmup = null;
+    }
+
+    /**
+     * Stores an update of the game or of a player straight from the tokens
+     * of the line, without creating Strings.
+     */
+    private void parseUpdate(ProtocolReader reader) {
+        if (reader.is(1, GAME)) {
+            if (reader.is(2, FIELD)) {
+                if (reader.length(3) > this.field.length)
+                    this.field = new byte[2 * reader.length(3)];
+                this.fieldLength = reader.copy(3, this.field);
+            }
+            else if (reader.is(2, ROUND)) {
+                this.round = reader.toInt(3);
+            }
+            return;
+        }
+
+        for (int i = 0; i < this.playerWords.length; i++) {
+            if (!reader.is(1, this.playerWords[i]))
+                continue;
+
+            if (reader.is(2, SNIPPETS))
+                this.snippets[i] = reader.toInt(3);
+            else if (reader.is(2, HAS_WEAPON))
+                this.hasWeapon[i] = reader.toBoolean(3);
+            else if (reader.is(2, IS_PARALYZED))
+                this.isParalyzed[i] = reader.toBoolean(3);
+            return;
+        }
+    }
+
+    private State createState() {
         // Players
         List<Player> players = new ArrayList<>();
-        for (String playerName : this.playerNames) {
-            Map<String, String> playerData = updates.get(playerName);
-            int id              = Integer.parseInt(playerName.substring(playerName.length() - 1));
-            int snippets        = Integer.parseInt(playerData.get("snippets"));
-            boolean hasWeapon   = Boolean.parseBoolean(playerData.get("has_weapon"));
-            boolean isParalyzed = Boolean.parseBoolean(playerData.get("is_paralyzed"));;
-
-            Player player = new Player(id, snippets, hasWeapon, isParalyzed);
-            players.add(player);
+        for (int i = 0; i < this.playerNames.length; i++) {
+            String playerName = this.playerNames[i];
+            int id = playerName.charAt(playerName.length() - 1) - '0';
+            players.add(new Player(id, this.snippets[i], this.hasWeapon[i], this.isParalyzed[i]));
         }
 
         // State
-        Map<String, String> roundData = updates.get("game");
-        String field = roundData.get("field");
-
-        return new State(field, players, this.states.peekFirst(), this);
+        return new State(this.field, this.fieldLength, players, this.states.peekFirst(), this);
     }
 
     @Override
@@ -189,6 +506,9 @@ public class Game {
         output.append("myName=" + myName + "\n");
         output.append("myId=" + myId + "\n");
 
+        if (Metrics.ENABLED)
+            output.append(this.metrics.summary());
+
         return output.toString();
     }
 }
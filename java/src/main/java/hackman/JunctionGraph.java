@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * hackman.JunctionGraph
+ *
+ * The maze with its corridors compressed: intersections and dead ends are
+ * the junctions, and each corridor between two junctions is an edge that
+ * knows the cells along it. Like the maze, it treats the bugs source
+ * entrances as open. The trap detection only looks at the junctions, and
+ * walks each corridor out of an intersection as a whole.
+ *
+ * The entrances and the cells next to them change their number of valid
+ * moves when an entrance opens or closes, so they are marked as unstable
+ * (as are the walls) and should be checked against the state instead.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+class JunctionGraph {
+
+    /**
+     * A corridor from one junction to another. The cells are those in
+     * between, in the order in which they are walked from the start.
+     */
+    static class Corridor {
+        final int start;     // junction cell
+        final int end;       // junction cell
+        final Move firstMove;
+        final int[] cells;
+
+        Corridor(int start, int end, Move firstMove, int[] cells) {
+            this.start     = start;
+            this.end       = end;
+            this.firstMove = firstMove;
+            this.cells     = cells;
+        }
+
+        int length() {
+            return this.cells.length + 1;
+        }
+    }
+
+    private final Maze maze;
+    private final byte[] degrees;      // cell : number of open neighbours
+    private final boolean[] unstable;  // cell : degree may differ in a state
+    private final Corridor[][] exits;  // junction cell : corridors leaving it
+    private final int[] junctions;
+
+    JunctionGraph(Maze maze) {
+        int width = maze.getWidth();
+        int nrCells = width * maze.getHeight();
+
+        this.maze     = maze;
+        this.degrees  = new byte[nrCells];
+        this.unstable = new boolean[nrCells];
+        this.exits    = new Corridor[nrCells][];
+
+        for (int cell = 0; cell < nrCells; cell++) {
+            this.unstable[cell] = !maze.isOpen(cell) || State.isEntrance(cell % width, cell / width);
+            if (!maze.isOpen(cell))
+                continue;
+
+            for (Move move : State.searchOrder()) {
+                int next = maze.neighbour(cell, move);
+                if (next < 0)
+                    continue;
+
+                this.degrees[cell]++;
+                if (State.isEntrance(next % width, next / width))
+                    this.unstable[cell] = true;
+            }
+        }
+
+        List<Integer> junctions = new ArrayList<>();
+        for (int cell = 0; cell < nrCells; cell++) {
+            if (isJunction(cell)) {
+                this.exits[cell] = walkCorridors(cell);
+                junctions.add(cell);
+            }
+        }
+        this.junctions = junctions.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Follows each of the corridors leaving a junction up to the next
+     * junction. Each junction keeps its corridors as walked from itself.
+     */
+    private Corridor[] walkCorridors(int junction) {
+        List<Corridor> leaving = new ArrayList<>();
+        for (Move move : State.searchOrder()) {
+            int next = this.maze.neighbour(junction, move);
+            if (next < 0)
+                continue;
+
+            List<Integer> cells = new ArrayList<>();
+            int prev = junction;
+            int cell = next;
+            while (!isJunction(cell)) {
+                cells.add(cell);
+                int from = prev;
+                prev = cell;
+                for (Move step : State.searchOrder()) {
+                    int n = this.maze.neighbour(cell, step);
+                    if (n >= 0 && n != from) {
+                        cell = n;
+                        break;
+                    }
+                }
+            }
+
+            int[] corridorCells = cells.stream().mapToInt(Integer::intValue).toArray();
+            leaving.add(new Corridor(junction, cell, move, corridorCells));
+        }
+        return leaving.toArray(new Corridor[0]);
+    }
+
+    /**
+     * @return True if the cell is an intersection or a dead end
+     */
+    boolean isJunction(int cell) {
+        return this.maze.isOpen(cell) && this.degrees[cell] != 2;
+    }
+
+    /**
+     * Returns whether a cell has more than two open neighbours in the
+     * maze. This is only reliable for stable cells.
+     */
+    boolean isIntersection(int cell) {
+        return this.degrees[cell] > 2;
+    }
+
+    /**
+     * @return True if the number of valid moves from the cell depends on
+     *         whether the bugs source entrances are open
+     */
+    boolean isUnstable(int cell) {
+        return this.unstable[cell];
+    }
+
+    /**
+     * @return The corridors leaving the given junction, in search order of
+     *         their first move, or null if the cell is not a junction
+     */
+    Corridor[] exits(int junction) {
+        return this.exits[junction];
+    }
+
+    /**
+     * @return The cells of the junctions, in increasing order
+     */
+    int[] junctions() {
+        return this.junctions;
+    }
+}
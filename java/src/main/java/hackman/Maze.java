@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import java.util.Arrays;
+
+/**
+ * hackman.Maze
+ *
+ * The static layout of the field, which does not change during a match.
+ * Distances between every pair of cells are computed once up front so
+ * that they can be looked up in constant time.
+ *
+ * The bugs source entrances are treated as open, so the distances are a
+ * lower bound on the distance in any given state.
+ *
+ * The maze also holds the single Point of each cell, which is what the
+ * positions of a state and the paths through it refer to.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+class Maze {
+
+    static final int UNREACHABLE = Short.MAX_VALUE;
+
+    private static final Move[] MOVES = Move.values();
+
+    private final int width;
+    private final int height;
+    private final int nrCells;
+    private final boolean[] walls;
+    private final Point[] points;
+
+    private final short[] distances;  // index = from * nrCells + to
+    private final byte[] firstSteps; // Move ordinal, same index as distances
+    private final JunctionGraph junctions;
+    private final TrapAnalysis trapAnalysis;
+    private final Zobrist zobrist;
+
+    Maze(int width, int height, byte[] grid) {
+        this.width   = width;
+        this.height  = height;
+        this.nrCells = width * height;
+        this.walls   = new boolean[this.nrCells];
+        for (int cell = 0; cell < this.nrCells; cell++)
+            this.walls[cell] = (grid[cell] & State.WALL) != 0;
+
+        this.points = new Point[this.nrCells];
+        for (int cell = 0; cell < this.nrCells; cell++)
+            this.points[cell] = new Point(cell % width, cell / width, cell);
+        Point.link(this.points, width, height);
+
+        this.distances  = new short[this.nrCells * this.nrCells];
+        this.firstSteps = new byte[this.nrCells * this.nrCells];
+        this.initDistances();
+        this.junctions = new JunctionGraph(this);
+        this.trapAnalysis = new TrapAnalysis(this);
+        this.zobrist = new Zobrist(this.nrCells);
+    }
+
+    int getWidth() {
+        return this.width;
+    }
+
+    int getHeight() {
+        return this.height;
+    }
+
+    JunctionGraph junctions() {
+        return this.junctions;
+    }
+
+    TrapAnalysis trapAnalysis() {
+        return this.trapAnalysis;
+    }
+
+    Zobrist zobrist() {
+        return this.zobrist;
+    }
+
+    /**
+     * Returns whether this maze has the same walls as the given field.
+     */
+    boolean hasLayout(int width, int height, byte[] grid) {
+        if (this.width != width || this.height != height)
+            return false;
+
+        for (int cell = 0; cell < this.nrCells; cell++) {
+            if (this.walls[cell] != ((grid[cell] & State.WALL) != 0))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The point of the given cell
+     */
+    Point point(int cell) {
+        return this.points[cell];
+    }
+
+    /**
+     * @return The index of the cell of the given point
+     */
+    int cell(Point p) {
+        int cell = p.cell();
+        return cell >= 0 ? cell : p.x + p.y * this.width;
+    }
+
+    boolean isOpen(int cell) {
+        return !this.walls[cell] || State.isEntrance(cell % this.width, cell / this.width);
+    }
+
+    /**
+     * Returns the cell that is next to the given cell in the direction of
+     * the given move, or -1 if it is outside the field or a wall.
+     */
+    int neighbour(int cell, Move move) {
+        Point next = this.points[cell].neighbour(move);
+        return next != null && isOpen(next.cell()) ? next.cell() : -1;
+    }
+
+    /**
+     * Does a breadth-first search from each cell to fill in the distance
+     * to it from every other cell, then derives the first move of a
+     * shortest path from the distances of the neighbouring cells.
+     */
+    private void initDistances() {
+        int[] queue = new int[this.nrCells];
+        Arrays.fill(this.distances, (short) UNREACHABLE);
+        Arrays.fill(this.firstSteps, (byte) Move.PASS.ordinal());
+
+        for (int to = 0; to < this.nrCells; to++) {
+            if (!isOpen(to))
+                continue;
+
+            // Distances are symmetric, so a search from the destination
+            // gives the distances to it from each of the origins
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = to;
+            this.distances[to * this.nrCells + to] = 0;
+
+            while (head < tail) {
+                int cell = queue[head++];
+                int distance = this.distances[cell * this.nrCells + to];
+
+                for (Move move : State.searchOrder()) {
+                    int next = neighbour(cell, move);
+                    if (next < 0 || this.distances[next * this.nrCells + to] != UNREACHABLE)
+                        continue;
+
+                    this.distances[next * this.nrCells + to] = (short) (distance + 1);
+                    queue[tail++] = next;
+                }
+            }
+
+            for (int from = 0; from < this.nrCells; from++) {
+                int distance = this.distances[from * this.nrCells + to];
+                if (distance == UNREACHABLE || distance == 0)
+                    continue;
+
+                for (Move move : State.searchOrder()) {
+                    int next = neighbour(from, move);
+                    if (next >= 0 && this.distances[next * this.nrCells + to] == distance - 1) {
+                        this.firstSteps[from * this.nrCells + to] = (byte) move.ordinal();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of moves on a shortest path between two cells.
+     *
+     * @return The distance, or UNREACHABLE if there is no path
+     */
+    int distance(int from, int to) {
+        return this.distances[from * this.nrCells + to];
+    }
+
+    /**
+     * Returns the first move on a shortest path between two cells.
+     *
+     * @return The move, or PASS if the cells are the same or there is no path
+     */
+    Move firstStep(int from, int to) {
+        return MOVES[this.firstSteps[from * this.nrCells + to]];
+    }
+}
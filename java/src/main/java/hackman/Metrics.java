@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * hackman.Metrics
+ *
+ * Where the time of each turn goes, and how much searching it took. Each
+ * phase adds up the wall time spent in it, from whichever thread, and the
+ * searches count the nodes they expanded and the paths they built. The
+ * allocated bytes are those of the thread that runs the turn.
+ *
+ * The phases of the players' paths include any threats and traps that
+ * are worked out along the way.
+ *
+ * Metrics are only collected when the bot is started with
+ * -Dhackman.metrics=true. Since ENABLED is a constant, the calls are
+ * compiled away otherwise.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+class Metrics {
+
+    static final boolean ENABLED = Boolean.getBoolean("hackman.metrics");
+
+    enum Phase { PARSE, THREATS, TRAPS, MY_PATHS, OPP_PATHS, SCORING }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final String[] COLUMNS = {
+            "parse", "threats", "traps", "my", "opp", "scoring", "total", "expanded", "paths", "alloc"
+    };
+    private static final int TOTAL    = PHASES.length;
+    private static final int EXPANDED = TOTAL + 1;
+    private static final int PATHS    = TOTAL + 2;
+    private static final int ALLOC    = TOTAL + 3;
+
+    private final LongAdder[] phaseNanos = new LongAdder[PHASES.length];
+    private final LongAdder nrExpanded = new LongAdder();
+    private final LongAdder nrPaths = new LongAdder();
+    private long turnStart;
+    private long allocatedAtStart;
+    private final List<long[]> turns = new ArrayList<>(); // turn : value per column
+
+    Metrics() {
+        for (int i = 0; i < this.phaseNanos.length; i++)
+            this.phaseNanos[i] = new LongAdder();
+    }
+
+    /**
+     * @return The start time of a phase, or 0 if metrics are disabled
+     */
+    static long now() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds the time since the given start to a phase of this turn.
+     */
+    void add(Phase phase, long start) {
+        if (ENABLED)
+            this.phaseNanos[phase.ordinal()].add(System.nanoTime() - start);
+    }
+
+    void countSearch(int nrExpanded, int nrPaths) {
+        if (ENABLED) {
+            this.nrExpanded.add(nrExpanded);
+            this.nrPaths.add(nrPaths);
+        }
+    }
+
+    void startTurn() {
+        if (!ENABLED)
+            return;
+
+        for (LongAdder nanos : this.phaseNanos)
+            nanos.reset();
+        this.nrExpanded.reset();
+        this.nrPaths.reset();
+        this.turnStart = System.nanoTime();
+        this.allocatedAtStart = allocatedBytes();
+    }
+
+    /**
+     * Records the turn that has been started.
+     *
+     * @param round The round of the turn
+     * @return A line with the metrics of the turn
+     */
+    String endTurn(int round) {
+        long[] turn = new long[COLUMNS.length];
+        for (int i = 0; i < PHASES.length; i++)
+            turn[i] = this.phaseNanos[i].sum();
+        turn[TOTAL]    = System.nanoTime() - this.turnStart;
+        turn[EXPANDED] = this.nrExpanded.sum();
+        turn[PATHS]    = this.nrPaths.sum();
+        turn[ALLOC]    = allocatedBytes() - this.allocatedAtStart;
+        this.turns.add(turn);
+
+        StringBuilder line = new StringBuilder("metrics round=" + round);
+        for (int i = 0; i < COLUMNS.length; i++)
+            line.append(' ').append(COLUMNS[i]).append('=').append(format(i, turn[i]));
+        return line.toString();
+    }
+
+    /**
+     * @return The median, 95th percentile and maximum of each column over
+     *         the turns so far, one column per line
+     */
+    String summary() {
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < COLUMNS.length && !this.turns.isEmpty(); i++) {
+            long[] values = new long[this.turns.size()];
+            for (int t = 0; t < values.length; t++)
+                values[t] = this.turns.get(t)[i];
+            Arrays.sort(values);
+
+            output.append(String.format("%s: p50=%s p95=%s max=%s\n", COLUMNS[i],
+                    format(i, percentile(values, 50)), format(i, percentile(values, 95)),
+                    format(i, values[values.length - 1])));
+        }
+        return output.toString();
+    }
+
+    /**
+     * @param sorted  The values in increasing order
+     * @param percent The percentile
+     * @return The value at the given percentile (nearest rank)
+     */
+    static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static String format(int column, long value) {
+        if (column <= TOTAL)
+            return String.format("%.2fms", value / 1e6);
+        if (column == ALLOC)
+            return String.format("%dkB", value / 1024);
+        return Long.toString(value);
+    }
+
+    /**
+     * @return The bytes allocated by the current thread so far, or 0 if the
+     *         JVM does not count them
+     */
+    static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        return 0;
+    }
+}
@@ -19,8 +19,6 @@
 
 package hackman;
 
-import hackman.Point;
-
 /**
  * hackman.Move
  *
@@ -29,26 +27,24 @@ import hackman.Point;
  * @author Jim van Eeden - jim@riddles.io
  */
 public enum Move {
-    UP,
-    DOWN,
-    LEFT,
-    RIGHT,
-    PASS;
+    UP(0, -1),
+    DOWN(0, +1),
+    LEFT(-1, 0),
+    RIGHT(+1, 0),
+    PASS(0, 0);
+
+    public final int dx;
+    public final int dy;
+    private final Point delta;
 
-    private static final Point up    = new Point(0, -1);
-    private static final Point down  = new Point(0, +1);
-    private static final Point left  = new Point(-1, 0);
-    private static final Point right = new Point(+1, 0);
-    private static final Point pass  = new Point(0, 0);
+    Move(int dx, int dy) {
+        this.dx    = dx;
+        this.dy    = dy;
+        this.delta = new Point(dx, dy);
+    }
 
     public Point delta() {
-        switch (this) {
-            case UP:    return up;
-            case DOWN:  return down;
-            case LEFT:  return left;
-            case RIGHT: return right;
-            default:    return pass;
-        }
+        return this.delta;
     }
 
     @Override
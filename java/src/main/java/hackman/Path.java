@@ -25,118 +25,136 @@ import java.util.stream.Collectors;
 /**
  * hackman.Path
  *
+ * A path is persistent: extending it creates a new node that points back
+ * to the path it extends, so paths that share a beginning also share the
+ * nodes for it. Each node only holds its last step and the running counts
+ * of the path. The positions and moves are collected from the nodes when
+ * they are first asked for.
+ *
  * @author Steven Lee - stevenwh.lee@gmail.com
  */
 
-public class Path {
-
-    private Point start;
-    private Point end;
-    private List<Move> moves;
-    private List<Point> positions;
-    private Set<Point> positionSet;
-    private Map<Integer, Integer> threatsByMove; // moveNr : nrThreats
-    private List<Integer> intersectionMoves;
-
-    private Path() {
-        this.start = null;
-        this.end   = null;
+public class Path implements PathSummary {
+
+    // Move : its place in the order in which searches expand the neighbours
+    private static final int[] SEARCH_RANKS = searchRanks();
+
+    private final Path parent;
+    private final Point start;
+    private final Point end;
+    private final Move lastMove;
+    private final Move firstMove;
+    private final int lastThreats;     // nrThreats at the end position
+    private final boolean lastIsIntersection;
+
+    private final int nrMoves;
+    private final int nrThreats;       // moves that encounter threats
+    private final float threatScore;
+    private final int nrIntersections;
+    private final long positionBloom;  // a bit for the hash of each position
+
+    // Built on first use. Paths are shared between threads without locking,
+    // which is safe since Arrays.asList() keeps the filled array in a final field.
+    private List<Point> positions = null;
+    private List<Move> moves = null;
+    private CellIndex cellIndex = null;
+
+    /**
+     * The cells that a path goes through, as a bit per cell, and the move
+     * number at which it first gets to each of them.
+     */
+    private static class CellIndex {
+        final long[] occupancy;  // bit = cell
+        final short[] moveNrs;   // cell : move number + 1, or 0 if not on the path
+
+        CellIndex(long[] occupancy, short[] moveNrs) {
+            this.occupancy = occupancy;
+            this.moveNrs   = moveNrs;
+        }
 
-        this.moves     = new ArrayList<>();
-        this.positions = new ArrayList<>();
-        this.positionSet = new HashSet<>();
-        this.threatsByMove = new HashMap<>();
-        this.intersectionMoves = new ArrayList<>();
+        boolean contains(int cell) {
+            return cell >= 0 && cell < this.moveNrs.length && this.moveNrs[cell] != 0;
+        }
     }
 
     public Path(Point start) {
-        this();
-        this.start = start;
-        this.end   = start;
-        this.positions.add(start);
-        this.positionSet.add(start);
+        this(null, start, start, null, 0, false);
     }
 
     public Path(Path path, Point nextPosition, Move nextMove, int nrThreats, State state) {
-        this(path);
-
-        if (!state.isPointValid(nextPosition))
-            throw new RuntimeException("Invalid point: " + nextPosition);
-
-        this.end = nextPosition;
-        this.positions.add(nextPosition);
-        this.positionSet.add(nextPosition);
-
-        this.moves.add(nextMove);
+        this(path, path.start, nextPosition, nextMove, nrThreats, isIntersection(nextPosition, state));
+    }
 
-        if (nrThreats > 0) this.threatsByMove.put(this.moves.size(), nrThreats);
+    private static boolean isIntersection(Point position, State state) {
+        if (!state.isPointValid(position))
+            throw new RuntimeException("Invalid point: " + position);
 
-        boolean isIntersection = state.getValidMoves(nextPosition).size() > 2;
-        if (isIntersection) this.intersectionMoves.add(this.moves.size());
+        return state.isIntersection(position);
     }
 
-    private Path(Path toCopy) {
-        this(toCopy.start, toCopy.end, toCopy.moves, toCopy.positions, toCopy.threatsByMove, toCopy.intersectionMoves);
+    private Path(Path parent, Point start, Point end, Move move, int nrThreats, boolean isIntersection) {
+        this.parent = parent;
+        this.start  = start;
+        this.end    = end;
+        this.lastMove = move;
+        this.lastThreats = nrThreats;
+        this.lastIsIntersection = isIntersection;
+
+        if (parent == null) {
+            this.firstMove = null;
+            this.nrMoves = 0;
+            this.nrThreats = 0;
+            this.threatScore = 0;
+            this.nrIntersections = 0;
+            this.positionBloom = bloom(end);
+        }
+        else {
+            this.firstMove = parent.nrMoves == 0 ? move : parent.firstMove;
+            this.nrMoves = parent.nrMoves + 1;
+            this.nrThreats = parent.nrThreats + (nrThreats > 0 ? 1 : 0);
+            this.threatScore = parent.threatScore + (nrThreats > 0 ? (float) nrThreats / this.nrMoves : 0);
+            this.nrIntersections = parent.nrIntersections + (isIntersection ? 1 : 0);
+            this.positionBloom = parent.positionBloom | bloom(end);
+        }
     }
 
-    private Path(Point start, Point end, List<Move> moves, List<Point> positions, Map<Integer, Integer> threatsByMove, List<Integer> intersectionMoves) {
-        this();
-        this.start = start;
-        this.end   = end;
+    private static long bloom(Point p) {
+        return 1L << ((p.x * 31 + p.y) & 63);
+    }
 
-        this.moves.addAll(moves);
-        this.positions.addAll(positions);
-        this.positionSet.addAll(positions);
-        this.threatsByMove.putAll(threatsByMove);
-        this.intersectionMoves.addAll(intersectionMoves);
+    /**
+     * Returns the node of this path that ends at the n-th position.
+     */
+    private Path node(int n) {
+        Path node = this;
+        while (node.nrMoves > n)
+            node = node.parent;
+        return node;
     }
 
     Path subPath(Point start, Point end) {
-        List<Move> moves = new ArrayList<>();
-        List<Point> positions = new ArrayList<>();
-        List<Integer> intersectionMoves = new ArrayList<>();
-        Map<Integer, Integer> threatsByMove = new HashMap<>();
+        List<Point> positions = this.getPositions();
 
         // Find the starting point
-        int i = 0;
-        int intNr = 0;
-        for (Point pos : this.positions) {
-            if (intNr < this.intersectionMoves.size()) {
-                if (i == this.intersectionMoves.get(intNr))
-                    intNr++;
-            }
-            if (pos.equals(start))
-                break;
-            i++;
-        }
-        if (i == nrMoves())
+        int i = positions.indexOf(start);
+        if (i < 0 || i == nrMoves())
             throw new RuntimeException("start point is not in the path: " + start);
 
         // Find the ending point
         int j = i;
-        for (Point pos : this.positions.subList(i, this.positions.size() - 1)) {
-            positions.add(pos);
-
-            if (intNr < this.intersectionMoves.size()) {
-                if (j == this.intersectionMoves.get(intNr)) {
-                    intersectionMoves.add(j);
-                    intNr++;
-                }
-            }
-
-            if (j > i && this.threatsByMove.containsKey(j))
-                threatsByMove.put(j - i, this.threatsByMove.get(j));
-
-            if (pos.equals(end))
-                break;
-
-            moves.add(this.moves.get(j));
+        while (j < nrMoves() && !positions.get(j).equals(end))
             j++;
-        }
         if (j == nrMoves())
             throw new RuntimeException("end point is not in the path: " + end);
 
-        Path subPath = new Path(start, end, moves, positions, threatsByMove, intersectionMoves);
+        // Retrace the steps in between, keeping what was known about them
+        Path[] nodes = new Path[j - i];
+        for (Path node = node(j); node.nrMoves > i; node = node.parent)
+            nodes[node.nrMoves - i - 1] = node;
+
+        Path subPath = new Path(start);
+        for (Path node : nodes)
+            subPath = new Path(subPath, start, node.end, node.lastMove, node.lastThreats, node.lastIsIntersection);
 
         return subPath;
     }
@@ -145,91 +163,200 @@ public class Path {
         return this.start;
     }
 
+    @Override
     public Point end() {
         return this.end;
     }
 
     public List<Point> getPositions() {
+        if (this.positions == null) {
+            Point[] positions = new Point[this.nrMoves + 1];
+            for (Path node = this; node != null; node = node.parent)
+                positions[node.nrMoves] = node.end;
+
+            this.positions = Arrays.asList(positions);
+        }
         return this.positions;
     }
 
     public Point position(int n) {
         if (n < 0)
             throw new IndexOutOfBoundsException("'n' must not be less than 0");
-        else if (n > this.moves.size())
+        else if (n > this.nrMoves)
             throw new IndexOutOfBoundsException("'n' must not exceed the number of moves");
 
-        int i = this.positions.size();
-        while (i <= n) {
-            if (i > 0) {
-                Point last = this.positions.get(i - 1);
-                Point curr = new Point(last, this.moves.get(i - 1));
-                this.positions.add(curr);
-            } else {
-                this.positions.add(this.start);
-            }
-            i++;
-        }
-        return this.positions.get(n);
+        if (n == this.nrMoves)
+            return this.end;
+
+        return this.getPositions().get(n);
     }
 
     public boolean contains(Point p) {
-        return this.positionSet.contains(p);
+        if ((this.positionBloom & bloom(p)) == 0)
+            return false;
+
+        for (Path node = this; node != null; node = node.parent) {
+            if (node.end.equals(p))
+                return true;
+        }
+        return false;
+    }
+
+    private List<Move> getMoves() {
+        if (this.moves == null) {
+            Move[] moves = new Move[this.nrMoves];
+            for (Path node = this; node.parent != null; node = node.parent)
+                moves[node.nrMoves - 1] = node.lastMove;
+
+            this.moves = Arrays.asList(moves);
+        }
+        return this.moves;
     }
 
     public Move move(int n) {
-        return this.moves.get(n);
+        if (n == 0 && this.nrMoves > 0)
+            return this.firstMove;
+
+        return this.getMoves().get(n);
     }
 
+    @Override
     public int nrMoves() {
-        return this.moves.size();
+        return this.nrMoves;
     }
 
     public int getMoveNr(Point pos) {
-        int i = 0;
-        for (Point p : this.positions) {
-            if (p.equals(pos))
-                return i;
-            i++;
-        }
-        throw new RuntimeException("Path does not contains the position: " + pos);
+        CellIndex index = this.getCellIndex();
+        int i = index != null && pos.cell() >= 0
+                ? (index.contains(pos.cell()) ? index.moveNrs[pos.cell()] - 1 : -1)
+                : this.getPositions().indexOf(pos);
+        if (i < 0)
+            throw new RuntimeException("Path does not contains the position: " + pos);
+        return i;
     }
 
-    int nrThreats() {
-        return this.threatsByMove.size();
+    @Override
+    public int nrThreats() {
+        return this.nrThreats;
     }
 
     float getThreatScore() {
-        float score = 0;
-        for (Map.Entry<Integer, Integer> e : this.threatsByMove.entrySet())
-            score += (float) e.getValue() / e.getKey(); // nrThreat / nrMoves
-
-        return score;
+        return this.threatScore; // sum of nrThreat / nrMoves
     }
 
     public List<Integer> getIntersectionMoves() {
-        return this.intersectionMoves;
+        Integer[] intersectionMoves = new Integer[this.nrIntersections];
+        for (Path node = this; node != null; node = node.parent) {
+            if (node.lastIsIntersection)
+                intersectionMoves[node.parent.nrIntersections] = node.nrMoves;
+        }
+        return Arrays.asList(intersectionMoves);
     }
 
-    //public int getIntersectionMove(int intersectionIndex) {
-    //    return this.intersectionMoves.get(intersectionIndex);
-    //}
-
+    @Override
     public int nrIntersections() {
-        return this.intersectionMoves.size();
+        return this.nrIntersections;
+    }
+
+    /**
+     * Builds the index of the cells of the path on first use.
+     *
+     * @return The index, or null if a position is not a cell of a maze
+     */
+    private CellIndex getCellIndex() {
+        if (this.cellIndex == null) {
+            List<Point> positions = this.getPositions();
+            int maxCell = 0;
+            for (Point p : positions) {
+                if (p.cell() < 0)
+                    return null;
+                maxCell = Math.max(maxCell, p.cell());
+            }
+
+            long[] occupancy = new long[(maxCell >> 6) + 1];
+            short[] moveNrs = new short[maxCell + 1];
+            for (int n = positions.size() - 1; n >= 0; n--) {
+                int cell = positions.get(n).cell();
+                occupancy[cell >> 6] |= 1L << cell;
+                moveNrs[cell] = (short) (n + 1);
+            }
+            this.cellIndex = new CellIndex(occupancy, moveNrs);
+        }
+        return this.cellIndex;
     }
 
     public List<Point> getIntersectingPoints(Path other) {
-        Set<Point> otherPositions = new HashSet<>(other.positions);
-        List<Point> intersectingPoints = this.positions.stream()
-                .filter(p -> otherPositions.contains(p))
-                .collect(Collectors.toList());
+        CellIndex otherIndex = other.getCellIndex();
+        if (otherIndex == null) {
+            Set<Point> otherPositions = new HashSet<>(other.getPositions());
+            return this.getPositions().stream()
+                    .filter(p -> otherPositions.contains(p))
+                    .collect(Collectors.toList());
+        }
 
+        List<Point> intersectingPoints = new ArrayList<>();
+        for (Point p : this.getPositions()) {
+            if (otherIndex.contains(p.cell()))
+                intersectingPoints.add(p);
+        }
         return intersectingPoints;
     }
 
+    /**
+     * Finds where this path first meets the other one. The cells that both
+     * paths go through are found a word at a time, and the one that this
+     * path gets to first is the meeting point.
+     *
+     * @param other The other path
+     * @return The first position of this path that is on the other path,
+     *         or null if they don't meet
+     */
+    public Point getFirstIntersectingPoint(Path other) {
+        CellIndex index = this.getCellIndex();
+        CellIndex otherIndex = other.getCellIndex();
+        if (index == null || otherIndex == null) {
+            List<Point> intersectingPoints = this.getIntersectingPoints(other);
+            return intersectingPoints.isEmpty() ? null : intersectingPoints.get(0);
+        }
+
+        int firstCell = -1;
+        int firstMoveNr = Integer.MAX_VALUE;
+        int nrWords = Math.min(index.occupancy.length, otherIndex.occupancy.length);
+        for (int w = 0; w < nrWords; w++) {
+            for (long common = index.occupancy[w] & otherIndex.occupancy[w]; common != 0; common &= common - 1) {
+                int cell = (w << 6) + Long.numberOfTrailingZeros(common);
+                if (index.moveNrs[cell] < firstMoveNr) {
+                    firstMoveNr = index.moveNrs[cell];
+                    firstCell = cell;
+                }
+            }
+        }
+        return firstCell >= 0 ? this.position(firstMoveNr - 1) : null;
+    }
+
+    /**
+     * Compares two paths of the same length move by move, a move being
+     * smaller if it comes earlier in the order in which searches expand
+     * the neighbouring cells. Shared beginnings are skipped at once.
+     */
+    static int compareMoves(Path a, Path b) {
+        if (a == b || a.parent == null || b.parent == null)
+            return 0;
+
+        int result = compareMoves(a.parent, b.parent);
+        return result != 0 ? result : Integer.compare(SEARCH_RANKS[a.lastMove.ordinal()], SEARCH_RANKS[b.lastMove.ordinal()]);
+    }
+
+    private static int[] searchRanks() {
+        Move[] order = State.searchOrder();
+        int[] ranks = new int[Move.values().length];
+        for (int i = 0; i < order.length; i++)
+            ranks[order[i].ordinal()] = i;
+        return ranks;
+    }
+
     @Override
     public String toString() {
-        return String.format("%s, %s: [%d]%s [%d]", this.start, this.end, this.nrMoves(), this.moves, this.nrThreats());
+        return String.format("%s, %s: [%d]%s [%d]", this.start, this.end, this.nrMoves(), this.getMoves(), this.nrThreats());
     }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+/**
+ * hackman.PathSummary
+ *
+ * The end point and counts of a path, without its positions. The search
+ * conditions are tested against these, so a search does not need to build
+ * a Path for every step that it considers.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+public interface PathSummary {
+
+    Point end();
+
+    int nrMoves();
+
+    int nrThreats();
+
+    int nrIntersections();
+}
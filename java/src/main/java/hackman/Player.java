@@ -20,9 +20,12 @@
 package hackman;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
  * hackman.Player
@@ -31,6 +34,9 @@ import java.util.stream.IntStream;
  */
 public class Player {
 
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final int NR_HEADINGS = Move.values().length;
+
     private int id;
     private int snippets;
     private boolean hasWeapon;
@@ -79,10 +85,13 @@ public class Player {
 
         // Reset cached attributes
         this.toOpponent = null;
-        this.pathsToThreats = null;
+        this.intersectionsFromMe = null;
+        this.nearbyThreats = null;
         this.threats = null;
         this.immediateThreats = null;
         this.traps = null;
+        this.threatArrivalTimes = null;
+        this.sealable = null;
     }
 
     /*****************************************************/
@@ -104,7 +113,7 @@ public class Player {
      * @return A path to the opponent player.
      */
     private List<Path> toOpponent = null;
-    private Path getPathToOpponent() {
+    private synchronized Path getPathToOpponent() {
         if (this.toOpponent == null) {
             Set<Point> targets = new HashSet<>();
             targets.add(getOpponent().getPosition());
@@ -160,31 +169,108 @@ public class Player {
         return threats;
     }
 
+    /**
+     * Gets the earliest round in which any threat can reach each cell: the
+     * enemy bugs, which do not turn back, and the opponent if it has a
+     * weapon. A position is safe to be at in a given round if no threat
+     * can arrive there by then.
+     *
+     * @return The arrival times, index = cell
+     */
+    private int[] threatArrivalTimes = null;
+    synchronized int[] getThreatArrivalTimes() {
+        if (this.threatArrivalTimes == null) {
+            long start = Metrics.now();
+            this.threatArrivalTimes = state.getEnemyArrivalTimes();
+
+            Player opponent = getOpponent();
+            if (opponent.hasWeapon()) {
+                this.threatArrivalTimes = this.threatArrivalTimes.clone();
+                Point pos = opponent.getPosition();
+                for (int cell = 0; cell < this.threatArrivalTimes.length; cell++) {
+                    int distance = state.distance(pos, state.point(cell));
+                    this.threatArrivalTimes[cell] = Math.min(this.threatArrivalTimes[cell], distance);
+                }
+            }
+            state.getMetrics().add(Metrics.Phase.THREATS, start);
+        }
+        return this.threatArrivalTimes;
+    }
+
+    /**
+     * Determines whether the player could be shut in at the given position
+     * if it went there: a threat can get to one of the articulation points
+     * between the position and the rest of the maze before the player can
+     * get back out through it.
+     *
+     * @param pos The position to test
+     * @return True if the position can be sealed off
+     */
+    private boolean[] sealable = null;
+    synchronized boolean canBeSealedIn(Point pos) {
+        if (this.sealable == null) {
+            TrapAnalysis trapAnalysis = state.getTrapAnalysis();
+            this.sealable = trapAnalysis.findSealable(state.cell(this.position), getThreatArrivalTimes());
+        }
+        return this.sealable[state.cell(pos)];
+    }
+
+    /**
+     * Gets the fewest intersections on the way from this player to each
+     * cell.
+     *
+     * @return The counts, index = cell
+     */
+    private int[] intersectionsFromMe = null;
+    private synchronized int[] getIntersectionsFromMe() {
+        if (this.intersectionsFromMe == null)
+            initIntersections();
+
+        return this.intersectionsFromMe;
+    }
+
+    /**
+     * Gets the number of the threats at the given position that are the
+     * armed opponent.
+     */
+    private int nrArmedOpponents(Point pos) {
+        Player opponent = getOpponent();
+        return opponent.hasWeapon() && opponent.getPosition().equals(pos) ? 1 : 0;
+    }
+
     /**
      * Like getPotentialThreats() except that it does not include enemies
-     * that are not threats because they are moving away.
+     * that are not threats because they are moving away: those that
+     * cannot get to the player without turning back within twice its
+     * distance to them. Threats further away than the longest path that
+     * is looked at are not included either.
      *
      * @return The positions of the threats.
      */
     private Map<Point, Integer> threats = null;
-    private Map<Point, Integer> getThreats() {
+    private synchronized Map<Point, Integer> getThreats() {
         if (this.threats == null) {
+            long start = Metrics.now();
             this.threats = new HashMap<>();
-            Map<Point, Integer> potentialThreats = getPotentialThreats();
+            int[] bugTimes = state.getBugTimesTo(this.position); // until the next search
             Map<Point, Integer> prevEnemyPositions = state.getPreviousEnemyPositions();
+            int maxDistance = state.getMaze().getWidth() + state.getMaze().getHeight() - 1;
 
-            for (Path toThreat : getPathsToThreats()) {
-                Point pos = toThreat.end();
-                int nrThreats = potentialThreats.get(pos);
+            getPotentialThreats().forEach((pos, nrThreats) -> {
+                int distance = state.distance(this.position, pos);
+                if (distance == 0 || distance > maxDistance)
+                    return;
 
                 // Don't count the threats that are moving away
-                Point penultimatePos = toThreat.position(toThreat.nrMoves() - 1);
-                nrThreats -= prevEnemyPositions.getOrDefault(penultimatePos, 0);
+                int heading = ArrivalTimes.heading(state, pos, prevEnemyPositions);
+                if (bugTimes[ArrivalTimes.node(state.cell(pos), heading)] > Math.min(2 * distance, maxDistance))
+                    nrThreats = nrArmedOpponents(pos);
 
-                this.threats.putIfAbsent(pos, nrThreats);
-                // Count the first one - there are multiple paths to the same threat
-            }
+                if (nrThreats > 0)
+                    this.threats.put(pos, nrThreats);
+            });
             //System.err.println(String.format("[%d] threats=%s", id, threats));
+            state.getMetrics().add(Metrics.Phase.THREATS, start);
         }
         return this.threats;
     }
@@ -192,27 +278,39 @@ public class Player {
     /**
      * Gets the threats that are 1-2 moves away. These are the threats that
      * can harm us in the next move. Those that are 2 steps away can harm us
-     * by moving to the position that we want to move to.
+     * by moving to the position that we want to move to, so they are
+     * counted at that position.
      *
      * @return The positions of the immediate threats
      */
     private Map<Point, Integer> immediateThreats = null;
-    private Map<Point, Integer> getImmediateThreats() {
+    private synchronized Map<Point, Integer> getImmediateThreats() {
         if (this.immediateThreats == null) {
             this.immediateThreats = new HashMap<>();
             Map<Point, Integer> threats = getThreats();
+            Map<Point, Integer> prevEnemyPositions = state.getPreviousEnemyPositions();
 
-            for (Path toThreat : getPathsToThreats()) {
-                if (toThreat.nrMoves() > 2)
-                    continue;
+            for (Move move : state.validMoves(state.cell(this.position))) {
+                Point next = this.position.neighbour(move);
+                int nrThreats = 0;
 
-                Point pos = toThreat.position(1);
-                int nrThreats = threats.get(toThreat.end());
+                for (Map.Entry<Point, Integer> threat : threats.entrySet()) {
+                    Point pos = threat.getKey();
+                    if (pos.equals(next)) {
+                        nrThreats += threat.getValue();
+                    }
+                    else if (state.distance(pos, next) == 1) {
+                        // A bug can't come back to where it just came from
+                        int heading = ArrivalTimes.heading(state, pos, prevEnemyPositions);
+                        if (ArrivalTimes.canMove(state, state.cell(pos), heading, state.firstStep(pos, next)))
+                            nrThreats += threat.getValue();
+                        else
+                            nrThreats += nrArmedOpponents(pos);
+                    }
+                }
 
-                if (!this.immediateThreats.containsKey(pos))
-                    this.immediateThreats.put(pos, nrThreats);
-                else
-                    this.immediateThreats.compute(pos, (k, v) -> v + nrThreats);
+                if (nrThreats > 0)
+                    this.immediateThreats.put(next, nrThreats);
             }
             //System.err.println(String.format("[%d] immediate=%s", id, immediateThreats));
         }
@@ -223,60 +321,56 @@ public class Player {
      * Gets the threats that are less than two intersection away from
      * the player. These threats are close enough such that they will
      * often not be detected as traps (because the player can reach
-     * the first intersection before them).
+     * the first intersection before them). A bug only counts if the way
+     * to it does not come in behind it.
      *
      * @return The positions of the nearby threats
      */
-    private Map<Point, Integer> getNearbyThreats() {
-        Map<Point, Integer> threats = getThreats();
-        Map<Point, Integer> nearbyThreats = getPathsToThreats().stream()
-                .filter(path -> path.nrMoves() > 2 && path.nrIntersections() < 2)
-                .map(path -> path.end())
-                .distinct()
-                .collect(Collectors.toMap(pos -> pos, pos -> threats.get(pos)));
-        nearbyThreats.putAll(getImmediateThreats());
+    private Map<Point, Integer> nearbyThreats = null;
+    private synchronized Map<Point, Integer> getNearbyThreats() {
+        if (this.nearbyThreats == null)
+            initIntersections();
 
-        //System.err.println(String.format("[%d] nearby=%s", id, nearbyThreats));
-        return nearbyThreats;
+        return this.nearbyThreats;
     }
 
     /**
-     * Gets the most direct path to each of the potential threats and filters
-     * out the enemies that are moving away and are therefore not threats.
-     *
-     * @return A list of paths to each threat
+     * Counts the intersections on the way from this player to each cell
+     * and heading, and keeps only what is needed of the counts: the fewest
+     * for each cell, and the nearby threats. The counts themselves are in
+     * the working memory of the search engine.
      */
-    private List<Path> pathsToThreats = null;
-    private List<Path> getPathsToThreats() {
-        if (this.pathsToThreats == null) {
-            Map<Point, Integer> threats = getPotentialThreats();
-            this.pathsToThreats = !threats.isEmpty()
-                    ? state.findPaths(this.position, threats.keySet(), null, 0, null)
-                    : new ArrayList<>();
-
-            // Is the enemy moving away? It's unlikely he will come back this way
-            Map<Point, Integer> prevEnemyPositions = state.getPreviousEnemyPositions();
-            if (!prevEnemyPositions.isEmpty()) {
-                this.pathsToThreats.removeIf(toThreat -> {
-                    Point pos = toThreat.end();
-                    Point penultimatePos = toThreat.position(toThreat.nrMoves() - 1);
-
-                    return prevEnemyPositions.containsKey(penultimatePos) &&
-                            prevEnemyPositions.get(penultimatePos) == threats.get(pos);
-                });
+    private void initIntersections() {
+        Map<Point, Integer> threats = getThreats();
+        Map<Point, Integer> nearbyThreats = new HashMap<>();
+        Map<Point, Integer> prevEnemyPositions = state.getPreviousEnemyPositions();
+        int[] intersections = state.getIntersectionsFrom(this.position); // until the next search
+
+        threats.forEach((pos, nrThreats) -> {
+            if (state.distance(this.position, pos) <= 2)
+                return;
+
+            int cell = state.cell(pos);
+            int heading = nrArmedOpponents(pos) > 0 ? ArrivalTimes.UNKNOWN : ArrivalTimes.heading(state, pos, prevEnemyPositions);
+            for (Move move : state.validMoves(cell)) {
+                Move lastMove = ArrivalTimes.reverse(move);
+                if (lastMove.ordinal() != heading && intersections[ArrivalTimes.node(cell, lastMove.ordinal())] < 2) {
+                    nearbyThreats.put(pos, nrThreats);
+                    break;
+                }
             }
-
-            // Is the path too round-about? It's unlikely the threat will come that way
-            Map<Point, Integer> minDistancePerThreat = new HashMap<>();
-            for (Path toThreat : this.pathsToThreats)
-                minDistancePerThreat.putIfAbsent(toThreat.end(), toThreat.nrMoves());
-            this.pathsToThreats.removeIf(toThreat -> {
-                Point threat = toThreat.end();
-                return toThreat.nrMoves() > minDistancePerThreat.get(threat) * 2;
-            });
-            //for (Path p : pathsToThreats) System.err.println(String.format("toThreats[%d]=%s", id, p));
+        });
+        this.intersectionsFromMe = new int[state.getMaze().getWidth() * state.getMaze().getHeight()];
+        for (int cell = 0; cell < this.intersectionsFromMe.length; cell++) {
+            int nrIntersections = Maze.UNREACHABLE;
+            for (int heading = 0; heading < NR_HEADINGS; heading++)
+                nrIntersections = Math.min(nrIntersections, intersections[ArrivalTimes.node(cell, heading)]);
+            this.intersectionsFromMe[cell] = nrIntersections;
         }
-        return this.pathsToThreats;
+
+        nearbyThreats.putAll(getImmediateThreats());
+        this.nearbyThreats = nearbyThreats;
+        //System.err.println(String.format("[%d] nearby=%s", id, nearbyThreats));
     }
 
     /**
@@ -287,7 +381,7 @@ public class Player {
      */
     boolean isTrapped() {
         // Am I surrounded by immediate threats?
-        List<Path> escapePaths = state.findShortestPathsPerDirection(this.position, null, getImmediateThreats(), 0, p -> p.nrMoves() < 3);
+        List<Path> escapePaths = state.findShortestPathsPerDirection(this.position, null, getImmediateThreats(), 0, SearchLimit.moves(2));
         if (escapePaths.isEmpty())
             return true;
 
@@ -295,7 +389,7 @@ public class Player {
         getNearbyThreats().forEach((k, v) -> avoid.merge(k, v, Integer::sum));
 
         // Are the paths to the closest intersections blocked?
-        escapePaths = state.findShortestPathsPerDirection(this.position, null, avoid, 0, p -> p.nrIntersections() == 0);
+        escapePaths = state.findShortestPathsPerDirection(this.position, null, avoid, 0, SearchLimit.intersections(0));
 
         //System.err.println(String.format("[%d] escape=%s", id, escapePaths));
         return escapePaths.isEmpty();
@@ -312,127 +406,205 @@ public class Player {
         getTraps().forEach((k, v) -> avoid.merge(k, v, Integer::sum));
 
         int nrThreatsAllowed = hasWeapon() ? 1 : 0;
-        List<Path> escapePaths = state.findShortestPathsPerDirection(this.position, null, avoid, nrThreatsAllowed, p -> p.nrIntersections() < 2);
+        List<Path> escapePaths = state.findShortestPathsPerDirection(this.position, null, avoid, nrThreatsAllowed, SearchLimit.intersections(1));
         return escapePaths.isEmpty();
     }
 
     /**
      * Finds the intersections that can be reached by a bug before you.
-     * If they can, then they can trap you in.
+     * If they can, then they can trap you in. So can the intersections
+     * from which every way on runs into a threat or a trap, and the
+     * targets in pockets of the maze that a threat can seal off. The
+     * times of the bugs all come from the one search of the state from
+     * all of them at once, so this costs the same however many there are.
      *
      * @return The set of intersection points where you can be trapped
      */
     private Map<Point, Integer> traps = null;
-    private Map<Point, Integer> getTraps() {
-        if (this.traps == null)
+    private synchronized Map<Point, Integer> getTraps() {
+        if (this.traps == null) {
+            getThreats(); // not timed as part of the traps
+            long start = Metrics.now();
             initTraps();
+            state.getMetrics().add(Metrics.Phase.TRAPS, start);
+        }
 
         return this.traps;
     }
 
+    /**
+     * The threats that the traps are worked out from: the bugs, by the
+     * cell that they are at, and the armed opponent. Each of them is only
+     * counted on its way to the player, within twice its distance.
+     */
+    private static class Chasers {
+        final Map<Integer, Integer> maxTimes = new HashMap<>(); // bug cell : rounds
+        int opponent = -1;
+        int opponentMaxTime = 0;
+    }
+
     private void initTraps() {
         this.traps = new HashMap<>();
         Set<Point> targets = this.getTargets();
+        int origin = state.cell(this.position);
+        JunctionGraph graph = state.getMaze().junctions();
+
+        // The threats 1-2 moves away have already been detected as immediate threats
+        // and we want to avoid double counting them because they are positioned differently.
+        // Threats coming the long way round are unlikely to come that way.
+        Chasers chasers = new Chasers();
+        for (Map.Entry<Point, Integer> threat : getThreats().entrySet()) {
+            Point pos = threat.getKey();
+            int distance = state.distance(this.position, pos);
+            if (distance <= 2)
+                continue;
 
-        Map<Point, Integer> intersectionOptions = new HashMap<>();
-        List<Path> pathsToThreats = getPathsToThreats();
-        for (Path toThreat : pathsToThreats) {
-            int maxMoves = toThreat.nrMoves();
+            if (threat.getValue() > nrArmedOpponents(pos))
+                chasers.maxTimes.put(state.cell(pos), 2 * distance);
+            if (nrArmedOpponents(pos) > 0) {
+                chasers.opponent = state.cell(pos);
+                chasers.opponentMaxTime = 2 * distance;
+            }
+        }
 
-            // These have already been detected as immediate threats and we want to
-            // avoid double counting them because they are positioned differently
-            if (maxMoves <= 2) continue;
+        // Can a threat reach an intersection before you?
+        List<Integer> closable = new ArrayList<>();
+        for (int cell : graph.junctions()) {
+            if (cell == origin || !state.isIntersection(cell))
+                continue;
 
-            // Don't be too cautious: far-away threats may move somewhere else
-            if (toThreat.nrMoves() > 10 && toThreat.nrIntersections() > 3)
+            int arrival = firstArrival(cell, chasers);
+            if (arrival <= state.distance(origin, cell)) {
+                //System.err.println(String.format("trap=%s", state.point(cell)));
+                this.traps.put(state.point(cell), 1);
+            }
+            else if (arrival != Maze.UNREACHABLE) {
+                closable.add(cell);
+            }
+        }
+
+        // ... or a target before the first intersection?
+        int[] intersections = getIntersectionsFromMe();
+        for (Point target : targets) {
+            int cell = state.cell(target);
+            if (cell == origin || state.isIntersection(cell) || intersections[cell] > 0)
                 continue;
 
-            // Find any intersections between you and the bug
-            //System.err.println(String.format("[%d] toThreat=%s", id, toThreat));
-            Deque<Point> intersectionStack = new ArrayDeque<>();
-            for (int i = 1; i <= maxMoves; i++) {
-                Point pos = toThreat.position(i);
-                int nrMoveOptions = state.getValidMoves(pos).size() - 1;
-                boolean isIntersection = nrMoveOptions > 1;
-
-                // Is it a target? We don't want to be trapped while getting it
-                if (targets.contains(pos) && intersectionStack.isEmpty()) {
-                    int movesToTarget = i;
-                    int threatToTarget = maxMoves - i;
-
-                    // Can the threat reach the target before you?
-                    if (movesToTarget >= threatToTarget) {
-                        //System.err.println(String.format("trap1=[%d >= %d]=%s", movesToTarget, threatToTarget, pos));
-                        this.traps.put(pos, 1);
-                    }
-                    // ... or can threats trap the player in while it's reaching for the target?
-                    else {
-                        // Check the threats from behind
-                        List<Path> pathsToTraps = pathsToThreats.stream()
-                                .filter(toTrap -> toTrap != toThreat && toTrap.nrMoves() <= 2 * movesToTarget)
-                                .collect(Collectors.toList());
-                        if (!pathsToTraps.isEmpty()) {
-                            intersectionOptions.put(pos, nrMoveOptions);
-                            intersectionStack.addFirst(pos);
-                        }
-                    }
-                }
-                // Is it an intersection? (not counting the point we come from)
-                else if (isIntersection) {
-                    if (!intersectionOptions.containsKey(pos))
-                        intersectionOptions.put(pos, nrMoveOptions);
-                    else
-                        nrMoveOptions = intersectionOptions.get(pos);
-
-                    int movesToIntersection = i;
-                    int threatToIntersection = maxMoves - i;
-
-                    // Can the threat reach the intersection before you?
-                    if (movesToIntersection >= threatToIntersection) {
-                        //System.err.println(String.format("trap2=[%d >= %d]=%s", movesToIntersection, threatToIntersection, pos));
-                        this.traps.put(pos, 1);
-
-                        // If all paths from an intersection lead to traps then
-                        // the intersection should also be considered a trap
-                        while (intersectionStack.peekFirst() != null) {
-                            Point lastIntersection = intersectionStack.removeFirst();
-                            int options = intersectionOptions.get(lastIntersection);
-
-                            intersectionOptions.put(lastIntersection, options - 1);
-
-                            if (options == 1) {
-                                //System.err.println("trap3=" + lastIntersection);
-                                this.traps.put(lastIntersection, 1);
-                            } else {
-                                break;
-                            }
-                        }
-                    }
-                    else if (nrMoveOptions == 1) {
-                        Point closedIntersection = IntStream.rangeClosed(i + 1, maxMoves)
-                                .mapToObj(j -> toThreat.position(j))
-                                .filter(p -> state.getValidMoves(p).size() > 2)
-                                .findFirst()
-                                .orElse(null);
-                        if (closedIntersection == null && !this.traps.containsKey(closedIntersection)) {
-                            //System.err.println("trap4=" + pos);
-                            this.traps.put(pos, 1);
-                        }
-                        break;
-                    }
-                    intersectionStack.addFirst(pos);
+            if (firstArrival(cell, chasers) <= state.distance(origin, cell))
+                this.traps.put(target, 1);
+        }
+
+        // If all corridors on from an intersection lead to threats or traps then
+        // the intersection should also be considered a trap
+        closable.sort(Comparator.comparing((Integer cell) -> state.distance(origin, cell)).reversed());
+        for (int cell : closable) {
+            Move back = state.firstStep(state.point(cell), this.position);
+            boolean isClosed = true;
+            for (JunctionGraph.Corridor exit : graph.exits(cell)) {
+                if (exit.firstMove != back && ArrivalTimes.canMove(state, cell, ArrivalTimes.UNKNOWN, exit.firstMove) &&
+                        !isBlocked(exit, chasers)) {
+                    isClosed = false;
+                    break;
                 }
             }
+
+            if (isClosed) {
+                //System.err.println("closed=" + state.point(cell));
+                this.traps.put(state.point(cell), 1);
+            }
+        }
+
+        // Don't go for targets in a pocket that a threat can seal off
+        for (Point target : targets) {
+            if (canBeSealedIn(target))
+                this.traps.put(target, 1);
         }
         //System.err.println(String.format("[%d] traps=%s", id, traps));
     }
 
-    private List<Path> getPaths() {
+    /**
+     * Gets the earliest round in which a threat on its way to the player
+     * can get to the cell, with any heading. Far-away threats are not
+     * counted, because they may move somewhere else.
+     *
+     * @return The arrival time, or Maze.UNREACHABLE
+     */
+    private int firstArrival(int cell, Chasers chasers) {
+        int distance = state.distance(state.cell(this.position), cell);
+        if (distance == Maze.UNREACHABLE)
+            return Maze.UNREACHABLE;
+
+        int arrival = opponentArrival(cell, distance, chasers);
+        for (int heading = 0; heading < NR_HEADINGS; heading++)
+            arrival = Math.min(arrival, bugArrival(ArrivalTimes.node(cell, heading), distance, chasers));
+
+        // Don't be too cautious: far-away threats may move somewhere else
+        if (distance + arrival > 10 && getIntersectionsFromMe()[cell] > 3)
+            return Maze.UNREACHABLE;
+
+        return arrival;
+    }
+
+    /**
+     * Counts the arrival at a node of the bug that gets there first, only
+     * if it is on its way to the player, who gets there at the given time.
+     *
+     * @return The arrival time, or Maze.UNREACHABLE
+     */
+    private int bugArrival(int node, int time, Chasers chasers) {
+        int arrival = state.getEnemyHeadingTimes()[node];
+        Integer maxTime = chasers.maxTimes.get(state.getEnemySources()[node]);
+        if (arrival == Maze.UNREACHABLE || maxTime == null || time + arrival > maxTime)
+            return Maze.UNREACHABLE;
+
+        return arrival;
+    }
+
+    /**
+     * Like bugArrival(), for the armed opponent.
+     */
+    private int opponentArrival(int cell, int time, Chasers chasers) {
+        if (chasers.opponent < 0)
+            return Maze.UNREACHABLE;
+
+        int arrival = state.distance(chasers.opponent, cell);
+        return time + arrival <= chasers.opponentMaxTime ? arrival : Maze.UNREACHABLE;
+    }
+
+    /**
+     * Follows a corridor from an intersection to the next junction, to see
+     * whether a threat coming the other way or a trap is in it. Only the
+     * bug that gets to each cell and heading first is looked at.
+     */
+    private boolean isBlocked(JunctionGraph.Corridor corridor, Chasers chasers) {
+        int origin = state.cell(this.position);
+        int distance = state.distance(origin, corridor.start);
+        for (int n = 1; n <= corridor.length(); n++) {
+            int cell = n < corridor.length() ? corridor.cells[n - 1] : corridor.end;
+            if (this.traps.containsKey(state.point(cell)))
+                return true;
+
+            // Coming towards the intersection, or just arrived at the cell
+            int prev = n > 1 ? corridor.cells[n - 2] : corridor.start;
+            int towards = state.getMaze().firstStep(cell, prev).ordinal();
+            int arrival = Math.min(opponentArrival(cell, distance + n, chasers), Math.min(
+                    bugArrival(ArrivalTimes.node(cell, towards), distance + n, chasers),
+                    bugArrival(ArrivalTimes.node(cell, ArrivalTimes.UNKNOWN), distance + n, chasers)));
+            if (arrival <= distance + n)
+                return true;
+
+            if (cell == origin)
+                return false;
+        }
+        return false;
+    }
+
+    List<Path> getPaths() {
         // Don't be a sitting duck if there are no targets:
         // Get any safe paths within 8 moves
-        Predicate<Path> searchWhile = null;
+        Predicate<PathSummary> searchWhile = null;
         if (getTargets().isEmpty())
-            searchWhile = (p -> p.nrMoves() <= 8);
+            searchWhile = SearchLimit.moves(8);
 
         int nrThreatsAllowed = this.hasWeapon ? 1 : 0;
         List<Path> paths = null;
@@ -445,7 +617,7 @@ public class Player {
         if (!this.hasWeapon) {
             if (isTrapped()) {
                 // Minimise damage since we can't avoid them completely
-                searchWhile = (p -> p.nrMoves() <= 8 || p.nrIntersections() < 2);
+                searchWhile = SearchLimit.movesOrIntersections(8, 1);
                 paths = state.findShortestPathsPerDirection(this.position, null, avoid, 5, searchWhile);
                 //if (!paths.isEmpty()) System.err.println(String.format("[%d] safe0=%s", id, paths.get(0)));
             }
@@ -458,14 +630,14 @@ public class Player {
 
             // Fallback: Going after the target is too dangerous
             if (paths.isEmpty()) {
-                searchWhile = (p -> p.nrMoves() <= 8);
+                searchWhile = SearchLimit.moves(8);
                 paths = state.findShortestPathsPerDirection(this.position, null, avoid, nrThreatsAllowed, searchWhile);
                 //if (!paths.isEmpty()) System.err.println(String.format("[%d] safe2=%s", id, paths.get(0)));
             }
 
             // Fallback: Minimise damage since we are likely trapped (just don't freeze)
             if (paths.isEmpty()) {
-                searchWhile = (p -> p.nrMoves() <= 8 || p.nrIntersections() < 2);
+                searchWhile = SearchLimit.movesOrIntersections(8, 1);
                 paths = state.findShortestPathsPerDirection(this.position, null, avoid, 5, searchWhile);
                 //if (!paths.isEmpty()) System.err.println(String.format("[%d] safe3=%s", id, paths.get(0)));
             }
@@ -479,7 +651,7 @@ public class Player {
 
                 // Check if an enemy stands in the way of setting the trap
                 Map<Point, Integer> threats = getThreats();
-                boolean pathHasEnemy = toOpponent.getPositions().stream()
+                boolean pathHasEnemy = toOpponent != null && toOpponent.getPositions().stream()
                         .anyMatch(pos -> threats.containsKey(pos));
 
                 if (toOpponent != null && !pathHasEnemy) {
@@ -523,16 +695,155 @@ public class Player {
         return paths;
     }
 
+    /**
+     * Gets a move that keeps clear of the positions that a threat can reach
+     * within a move, without looking any further. This is the fallback when
+     * there is no time for anything else.
+     *
+     * @return The first move of the shortest safe path, or PASS
+     */
+    private Move getSafeMove() {
+        Map<Point, Integer> avoid = new HashMap<>();
+        int[] arrivalTimes = getThreatArrivalTimes();
+        for (int cell = 0; cell < arrivalTimes.length; cell++) {
+            if (arrivalTimes[cell] <= 1)
+                avoid.put(state.point(cell), 1);
+        }
+
+        List<Path> paths = state.findShortestPathsPerDirection(this.position, null, avoid, 0, SearchLimit.moves(2));
+        return getFirstMove(paths, Move.PASS);
+    }
+
+    /**
+     * Gets a move towards the nearest target that avoids the threats
+     * close to the player, skipping the targets in pockets of the maze
+     * that can be sealed off. The traps along the way and the opponent
+     * are not considered.
+     *
+     * @param fallback The move to return if there is no such path
+     * @return The first move of the shortest path to a target
+     */
+    private Move getThreatAwareMove(Move fallback) {
+        Map<Point, Integer> avoid = new HashMap<>(getImmediateThreats());
+        getNearbyThreats().forEach((k, v) -> avoid.merge(k, v, Integer::sum));
+
+        // Leave the targets that can be sealed off to the full analysis
+        Set<Point> targets = getTargets();
+        targets.removeIf(this::canBeSealedIn);
+
+        int nrThreatsAllowed = this.hasWeapon ? 1 : 0;
+        List<Path> paths = state.findShortestPathsPerDirection(this.position, targets, avoid, nrThreatsAllowed, null);
+        return getFirstMove(paths, fallback);
+    }
+
+    private static Move getFirstMove(List<Path> paths, Move fallback) {
+        return paths.stream()
+                .filter(path -> path.nrMoves() > 0)
+                .map(path -> path.move(0))
+                .findFirst()
+                .orElse(fallback);
+    }
+
+    /**
+     * Waits for the analysis of the opponent if it was started on another
+     * thread, or does it now. The executor may still be busy with earlier
+     * work, so the wait is given up at the deadline.
+     *
+     * @param analysis The running analysis, or null
+     * @param deadline The System.nanoTime() by which to decide, or NO_DEADLINE
+     * @return The opponent's paths, or null if the deadline passed first
+     */
+    private List<Path> getOpponentPaths(Future<List<Path>> analysis, long deadline) {
+        if (analysis == null)
+            return this.getOpponent().getPaths();
+
+        try {
+            if (deadline == NO_DEADLINE)
+                return analysis.get();
+
+            return analysis.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        catch (TimeoutException e) {
+            analysis.cancel(false);
+            return null;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return this.getOpponent().getPaths();
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private boolean isPast(long deadline) {
+        return state.isExpired() || deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0;
+    }
+
     /**
      * Does a move action.
      *
      * @return A Move object
      */
     public Move doMove() {
+        return doMove(NO_DEADLINE);
+    }
+
+    /**
+     * Does a move action within the given time. A safe move is found
+     * first, which is then refined by analyses that take increasingly
+     * longer: the threats, the traps, the opponent's paths and finally
+     * the scoring of each direction. When the deadline passes between
+     * two analyses, or the state is expired, the best move found so far
+     * is returned. Without a deadline, the fallback moves are skipped since
+     * they are never used.
+     *
+     * If the state has an executor, the opponent's paths are found on it
+     * while this player's are found on the calling thread. The lazily
+     * cached analyses of both players are synchronised, since each uses
+     * the other's, and the result is the same as when run in sequence.
+     *
+     * @param deadline The System.nanoTime() by which to decide, or NO_DEADLINE
+     * @return A Move object
+     */
+    public Move doMove(long deadline) {
         //System.err.println("\n" + state);
 
-        List<Path> myPaths  = this.getPaths();
-        List<Path> oppPaths = this.getOpponent().getPaths();
+        Move bestMove = Move.PASS;
+        if (deadline != NO_DEADLINE) {
+            bestMove = getSafeMove();
+            if (isPast(deadline))
+                return bestMove;
+
+            bestMove = getThreatAwareMove(bestMove);
+            if (isPast(deadline))
+                return bestMove;
+        }
+
+        Future<List<Path>> oppAnalysis = null;
+        ExecutorService executor = state.getExecutor();
+        if (executor != null) {
+            state.prepareForSharing();
+            oppAnalysis = executor.submit(this.getOpponent()::getPaths);
+        }
+
+        long start = Metrics.now();
+        List<Path> myPaths = this.getPaths();
+        state.getMetrics().add(Metrics.Phase.MY_PATHS, start);
+        bestMove = getFirstMove(myPaths, bestMove);
+        if (isPast(deadline)) {
+            if (oppAnalysis != null)
+                oppAnalysis.cancel(false);
+            return bestMove;
+        }
+
+        start = Metrics.now();
+        List<Path> oppPaths = getOpponentPaths(oppAnalysis, deadline);
+        state.getMetrics().add(Metrics.Phase.OPP_PATHS, start);
+        if (oppPaths == null || isPast(deadline))
+            return bestMove;
+
+        start = Metrics.now();
 
         //System.err.println("myPath=" + myPaths.get(0));
         //System.err.println("oppPath=" + oppPaths.get(0));
@@ -581,8 +892,7 @@ public class Player {
 
                 Path oppPath = oppPathsByTarget.get(target);
                 if (oppPath != null) {
-                    List<Point> intersectingPoints = myPath.getIntersectingPoints(oppPath);
-                    Point meetingPoint = intersectingPoints.size() > 0 ? intersectingPoints.get(0) : null;
+                    Point meetingPoint = myPath.getFirstIntersectingPoint(oppPath);
 
                     // Cut our losses: Ditch targets that opponent can get to first
                     if (oppPath.nrMoves() < myPath.nrMoves()) {
@@ -631,6 +941,7 @@ public class Player {
                 .orElse(null);
 
         //System.err.println("move=" + move);
+        state.getMetrics().add(Metrics.Phase.SCORING, start);
         return move != null ? move : Move.PASS;
     }
 
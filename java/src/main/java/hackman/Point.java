@@ -25,18 +25,94 @@ package hackman;
  * A point representing a location in (x,y) coordinate space, specified in
  * integer precision.
  *
+ * The maze keeps a single Point for each cell of the field, which knows its
+ * cell index and its neighbours. Points made with the constructor are equal
+ * to them, but have no cell index or neighbours.
+ *
  * @author Steven Lee - stevenwh.lee@gmail.com
  */
-public class Point extends java.awt.Point {
+public final class Point {
+
+    public final int x;
+    public final int y;
+
+    private final int cell;  // index into the field, or -1
+    private final int hash;
+    private Point[] neighbours = null; // Move ordinal : point
 
     public Point(int x, int y) {
-        super(x, y);
+        this(x, y, -1);
     }
 
     public Point(Point point, Move toApply) {
-        this((int) point.getX(), (int) point.getY());
+        this(point.x + toApply.dx, point.y + toApply.dy);
+    }
+
+    Point(int x, int y, int cell) {
+        this.x    = x;
+        this.y    = y;
+        this.cell = cell;
+
+        // Same hash as java.awt.Point, so hashed collections keep their order
+        long bits = Double.doubleToLongBits(x);
+        bits ^= Double.doubleToLongBits(y) * 31;
+        this.hash = (int) bits ^ (int) (bits >> 32);
+    }
+
+    /**
+     * Links the points of a field to their neighbours.
+     *
+     * @param points The point of each cell, index = x + y * width
+     */
+    static void link(Point[] points, int width, int height) {
+        Move[] moves = Move.values();
+        for (Point point : points) {
+            point.neighbours = new Point[moves.length];
+            for (Move move : moves) {
+                int x = point.x + move.dx;
+                int y = point.y + move.dy;
+                if (x >= 0 && x < width && y >= 0 && y < height)
+                    point.neighbours[move.ordinal()] = points[x + y * width];
+            }
+        }
+    }
+
+    /**
+     * @return The index of the cell in the field, or -1 if this point was
+     *         not made by the maze
+     */
+    int cell() {
+        return this.cell;
+    }
+
+    /**
+     * Returns the point next to this one in the direction of the given
+     * move, whether or not it is a wall.
+     *
+     * @return The neighbour, or null if it is outside the field
+     */
+    Point neighbour(Move move) {
+        return this.neighbours[move.ordinal()];
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof Point))
+            return false;
+
+        Point other = (Point) obj;
+        return this.x == other.x && this.y == other.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
 
-        Point delta = toApply.delta();
-        translate((int) delta.getX(), (int) delta.getY());
+    @Override
+    public String toString() {
+        return getClass().getName() + "[x=" + this.x + ",y=" + this.y + "]";
     }
 }
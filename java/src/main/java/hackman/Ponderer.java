@@ -0,0 +1,214 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * hackman.Ponderer
+ *
+ * Uses the time in which the bot waits for the engine. As soon as a move
+ * is sent, the states that are likely to come next are predicted: one for
+ * each move of the opponent, with the bugs making their most likely moves
+ * (see BugModel). The player's analysis of each of them is then done in
+ * the background, most likely first, which fills their search caches.
+ * The predicted states don't use the executor or the metrics of the
+ * match, so a real turn never has to wait behind them or count their work.
+ *
+ * When the next state arrives, pondering stops: the predictions are
+ * expired, so the analysis under way gives up at its next check instead
+ * of running into the real turn. If one of the predictions was right its
+ * searches are reused.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+class Ponderer {
+
+    private final Game game;
+    private final ExecutorService executor;
+    private final List<State> predictions = new ArrayList<>();
+    private Future<?> pondering = null;
+    private volatile boolean isStopped = false;
+
+    Ponderer(Game game) {
+        this.game = game;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ponder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Predicts the next states and starts analysing them.
+     *
+     * @param state  The current state
+     * @param myMove The move that was sent for it
+     */
+    void start(State state, Move myMove) {
+        this.stop();
+        state.prepareForSharing();
+
+        int myId  = state.getMyPlayer().getId();
+        int oppId = 1 - myId;
+        Player opponent = state.getPlayer(oppId);
+        List<Move> oppMoves = new ArrayList<>(state.getValidMoves(opponent.getPosition()));
+        oppMoves.add(Move.PASS);
+
+        for (Move oppMove : oppMoves) {
+            Move[] moves = new Move[2];
+            moves[myId]  = myMove;
+            moves[oppId] = oppMove;
+            this.predictions.add(this.predict(state, moves));
+        }
+
+        List<State> predictions = new ArrayList<>(this.predictions);
+        this.isStopped = false;
+        this.pondering = this.executor.submit(() -> {
+            for (State prediction : predictions) {
+                if (this.isStopped)
+                    break;
+                prediction.getMyPlayer().doMove();
+            }
+        });
+    }
+
+    /**
+     * Stops pondering. The analysis that is under way stops at its next
+     * check, the others are not started.
+     */
+    void stop() {
+        this.isStopped = true;
+        if (this.pondering != null)
+            this.pondering.cancel(false);
+        for (State prediction : this.predictions)
+            prediction.expire();
+
+        this.pondering = null;
+        this.predictions.clear();
+    }
+
+    /**
+     * Stops pondering and lets the state reuse the searches of the
+     * prediction that matches it, if any.
+     *
+     * @param state The state that has arrived
+     * @return True if one of the predictions was right
+     */
+    boolean reuse(State state) {
+        List<State> predictions = new ArrayList<>(this.predictions);
+        this.stop();
+
+        for (State prediction : predictions) {
+            if (prediction.getHash() == state.getHash() && state.reuseSearches(prediction))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Works out the state after the given moves, as far as it can be told:
+     * the players move and pick up what is there, the bugs make their most
+     * likely moves, and bugs that run into a player are killed.
+     */
+    private State predict(State state, Move[] moves) {
+        Maze maze = state.getMaze();
+        byte[] grid = state.copyGrid();
+        int[] players = new int[2];
+        int[] prevPlayers = new int[2];
+        boolean[] hasWeapon = new boolean[2];
+
+        for (int id = 0; id < 2; id++) {
+            Player player = state.getPlayer(id);
+            int from = maze.cell(player.getPosition());
+            int to = from;
+            if (moves[id] != Move.PASS && state.getValidMoves(player.getPosition()).contains(moves[id]))
+                to = maze.neighbour(from, moves[id]);
+
+            int bit = id == 0 ? State.PLAYER_0 : State.PLAYER_1;
+            grid[from] &= ~bit;
+            grid[to]   |= bit;
+            prevPlayers[id] = from;
+            players[id] = to;
+            hasWeapon[id] = player.hasWeapon();
+        }
+
+        // The bugs move after the players
+        List<int[]> bugs = new ArrayList<>(); // {from, to}
+        Map<Point, Integer> prevEnemies = state.getPreviousEnemyPositions();
+        Move[] available = new Move[4];
+        for (Map.Entry<Point, Integer> entry : state.getEnemyPositions().entrySet()) {
+            int from = maze.cell(entry.getKey());
+            int heading = ArrivalTimes.heading(state, entry.getKey(), prevEnemies);
+            int nrAvailable = BugModel.availableMoves(maze, from, heading, available);
+
+            Move move;
+            if (nrAvailable == 0)
+                move = BugModel.turnBack(heading);
+            else if (nrAvailable == 1)
+                move = available[0];
+            else
+                move = BugModel.chase(maze, from, available, nrAvailable, players);
+
+            int to = move != Move.PASS ? maze.neighbour(from, move) : -1;
+            for (int i = 0; i < entry.getValue(); i++)
+                bugs.add(new int[] {from, to >= 0 ? to : from});
+            grid[from] &= ~State.ENEMY_MASK;
+        }
+
+        for (int id = 0; id < 2; id++) {
+            int cell = players[id];
+            if ((grid[cell] & State.WEAPON) != 0)
+                hasWeapon[id] = true;
+            grid[cell] &= ~(State.SNIPPET | State.WEAPON);
+        }
+
+        for (int[] bug : bugs) {
+            boolean isKilled = false;
+            for (int id = 0; id < 2 && !isKilled; id++) {
+                isKilled = bug[1] == players[id] || (bug[0] == players[id] && bug[1] == prevPlayers[id]);
+                if (isKilled)
+                    hasWeapon[id] = false;
+            }
+
+            int nrEnemies = (grid[bug[1]] & State.ENEMY_MASK) >> State.ENEMY_SHIFT;
+            if (!isKilled && nrEnemies < State.MAX_ENEMIES)
+                grid[bug[1]] += 1 << State.ENEMY_SHIFT;
+        }
+
+        List<Player> predicted = new ArrayList<>(2);
+        for (int id = 0; id < 2; id++) {
+            Player player = state.getPlayer(id);
+            predicted.add(new Player(id, player.getSnippets(), hasWeapon[id], false));
+        }
+        State prediction = new State(State.toField(grid), predicted, state, this.game);
+        prediction.detach();
+        return prediction;
+    }
+
+    int nrPredictions() {
+        return this.predictions.size();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * hackman.ProtocolReader
+ *
+ * Reads the lines from the engine straight from the bytes of the input,
+ * and splits them into space-separated tokens in place. The tokens can be
+ * compared, parsed as numbers or copied out without creating Strings, so
+ * that reading an update does not allocate.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+class ProtocolReader {
+
+    private static final int MAX_TOKENS = 8;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position = 0;
+    private int limit = 0;
+
+    private byte[] line = new byte[1 << 12];
+    private final int[] starts = new int[MAX_TOKENS];
+    private final int[] ends = new int[MAX_TOKENS];
+    private int nrTokens = 0;
+
+    ProtocolReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @return The ASCII bytes of a word to compare tokens with
+     */
+    static byte[] word(String word) {
+        return word.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Reads the next line and splits it into tokens. Like a Scanner, an
+     * error while reading is taken as the end of the input.
+     *
+     * @return False at the end of the input
+     */
+    boolean nextLine() {
+        int length = 0;
+        boolean isEmpty = true;
+        while (true) {
+            if (this.position == this.limit && !this.fill())
+                break;
+
+            isEmpty = false;
+            byte b = this.buffer[this.position++];
+            if (b == '\n')
+                break;
+            if (b == '\r')
+                continue;
+
+            if (length == this.line.length)
+                this.line = Arrays.copyOf(this.line, 2 * length);
+            this.line[length++] = b;
+        }
+        if (isEmpty)
+            return false;
+
+        this.tokenise(length);
+        return true;
+    }
+
+    private boolean fill() {
+        try {
+            this.limit = Math.max(0, this.in.read(this.buffer));
+            this.position = 0;
+            return this.limit > 0;
+        }
+        catch (IOException e) {
+            this.limit = 0;
+            this.position = 0;
+            return false;
+        }
+    }
+
+    private void tokenise(int length) {
+        this.nrTokens = 0;
+        int i = 0;
+        while (i < length && this.nrTokens < MAX_TOKENS) {
+            while (i < length && this.line[i] == ' ')
+                i++;
+            if (i == length)
+                break;
+
+            this.starts[this.nrTokens] = i;
+            while (i < length && this.line[i] != ' ')
+                i++;
+            this.ends[this.nrTokens++] = i;
+        }
+    }
+
+    int nrTokens() {
+        return this.nrTokens;
+    }
+
+    int length(int token) {
+        return this.ends[token] - this.starts[token];
+    }
+
+    /**
+     * @return True if the token consists of the given bytes
+     */
+    boolean is(int token, byte[] word) {
+        if (token >= this.nrTokens || this.length(token) != word.length)
+            return false;
+
+        int start = this.starts[token];
+        for (int i = 0; i < word.length; i++) {
+            if (this.line[start + i] != word[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The last byte of the token
+     */
+    byte last(int token) {
+        return this.line[this.ends[token] - 1];
+    }
+
+    /**
+     * Parses the token as a decimal number.
+     *
+     * @throws NumberFormatException If it is not one
+     */
+    int toInt(int token) {
+        int start = this.starts[token];
+        int end = this.ends[token];
+        boolean isNegative = end > start && this.line[start] == '-';
+        int i = isNegative ? start + 1 : start;
+        if (i == end)
+            throw new NumberFormatException("Not a number: " + this.toString(token));
+
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = this.line[i] - '0';
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException("Not a number: " + this.toString(token));
+            value = value * 10 + digit;
+        }
+        return isNegative ? -value : value;
+    }
+
+    /**
+     * @return True if the token is "true", ignoring case, as Boolean.parseBoolean()
+     */
+    boolean toBoolean(int token) {
+        int start = this.starts[token];
+        if (this.ends[token] - start != 4)
+            return false;
+
+        return (this.line[start] | 0x20) == 't' && (this.line[start + 1] | 0x20) == 'r' &&
+                (this.line[start + 2] | 0x20) == 'u' && (this.line[start + 3] | 0x20) == 'e';
+    }
+
+    /**
+     * Copies the bytes of the token, e.g. a field, into the given array.
+     *
+     * @param dest An array of at least length(token) bytes
+     * @return The number of bytes copied
+     */
+    int copy(int token, byte[] dest) {
+        int length = this.length(token);
+        System.arraycopy(this.line, this.starts[token], dest, 0, length);
+        return length;
+    }
+
+    /**
+     * @return The token as a String, for the settings and messages
+     */
+    String toString(int token) {
+        return new String(this.line, this.starts[token], this.length(token), StandardCharsets.ISO_8859_1);
+    }
+}
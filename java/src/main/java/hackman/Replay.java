@@ -0,0 +1,242 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * hackman.Replay
+ *
+ * Plays a recorded match back to the bot and measures each move. The
+ * transcript has the lines that the engine sent, either as the bot got
+ * them or as the engine's BotIOHandler wrote them ("bot 0 send ...",
+ * "bot 0 ask ..."), in which case only those for one bot are replayed.
+ *
+ * The time of a move runs from reading the action request to writing the
+ * move. The allocated bytes are those since the previous move, so they
+ * include reading the updates of the round.
+ *
+ * Usage: java -cp hackman.jar hackman.Replay transcript [golden] [bot id]
+ *
+ * The moves are written to standard output, one per line, so that they can
+ * be kept as the golden moves of a later replay. The report, and any moves
+ * that differ from the golden ones, go to standard error. When there are
+ * golden moves to compare with, the moves have no deadlines, so that they
+ * only depend on the transcript and not on how fast the machine is.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+public class Replay {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: hackman.Replay transcript [golden] [bot id]");
+            System.exit(2);
+        }
+
+        List<String> transcript = Files.readAllLines(Paths.get(args[0]), StandardCharsets.ISO_8859_1);
+        int botId = args.length > 2 ? Integer.parseInt(args[2]) : firstBotId(transcript);
+
+        Replay replay = new Replay();
+        List<Turn> turns = replay.replay(transcript, botId, args.length < 2);
+        for (Turn turn : turns)
+            System.out.println(turn.move);
+        System.err.print(report(turns, replay.timePerMove));
+
+        if (args.length > 1) {
+            List<String> golden = readMoves(Files.readAllLines(Paths.get(args[1]), StandardCharsets.ISO_8859_1), botId);
+            List<String> differences = diff(turns, golden);
+            for (String difference : differences)
+                System.err.println(difference);
+            System.err.println(String.format("%d of %d moves differ from %s", differences.size(), golden.size(), args[1]));
+            if (!differences.isEmpty())
+                System.exit(1);
+        }
+    }
+
+    /**
+     * A move of the bot, with what it took to make it.
+     */
+    static class Turn {
+        final String move;
+        final long nanos;
+        final long allocated; // bytes
+
+        Turn(String move, long nanos, long allocated) {
+            this.move      = move;
+            this.nanos     = nanos;
+            this.allocated = allocated;
+        }
+    }
+
+    private static final String BOT = "bot ";
+
+    private int timePerMove;
+
+    /**
+     * Runs a game on the engine's lines of the transcript for the given bot.
+     *
+     * @param transcript The lines of the transcript
+     * @param botId      The bot to replay, or -1 if the lines have no prefix
+     * @param isTimed    False to make the moves without deadlines
+     * @return The moves that the bot made
+     */
+    List<Turn> replay(List<String> transcript, int botId, boolean isTimed) {
+        StringBuilder input = new StringBuilder();
+        for (String line : transcript) {
+            String message = toBot(line, botId);
+            if (message != null)
+                input.append(message).append('\n');
+        }
+
+        List<Turn> turns = new ArrayList<>();
+        Game[] game = new Game[1];
+        PrintStream out = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }) {
+            private long allocatedBefore = Metrics.allocatedBytes();
+
+            @Override
+            public void println(Object move) {
+                long allocated = Metrics.allocatedBytes();
+                turns.add(new Turn(String.valueOf(move), System.nanoTime() - game[0].getActionTime(), allocated - this.allocatedBefore));
+                this.allocatedBefore = allocated;
+            }
+        };
+
+        game[0] = new Game(new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.ISO_8859_1)), out);
+        game[0].setTimed(isTimed);
+        game[0].run();
+        this.timePerMove = game[0].getTimePerMove();
+        return turns;
+    }
+
+    /**
+     * @return The message that the bot gets in a line of the transcript, or
+     *         null if the line is not for the bot
+     */
+    static String toBot(String line, int botId) {
+        if (botId < 0)
+            return line;
+
+        String prefix = BOT + botId + " ";
+        if (!line.startsWith(prefix))
+            return null;
+
+        String message = line.substring(prefix.length());
+        if (message.startsWith("send "))
+            return message.substring("send ".length());
+        if (message.startsWith("ask "))
+            return message.substring("ask ".length());
+        return null;
+    }
+
+    /**
+     * @return The bot of the first line with a bot prefix, or -1 if there
+     *         is none and the lines are as the bot got them
+     */
+    static int firstBotId(List<String> transcript) {
+        for (String line : transcript) {
+            if (!line.startsWith(BOT))
+                continue;
+
+            String[] parts = line.split(" ");
+            if (parts.length > 1 && parts[1].matches("\\d+"))
+                return Integer.parseInt(parts[1]);
+        }
+        return -1;
+    }
+
+    /**
+     * Picks the moves out of a golden transcript: either one move per line,
+     * as written by a replay, or the bot's answers in the engine's format.
+     */
+    static List<String> readMoves(List<String> golden, int botId) {
+        List<String> moves = new ArrayList<>();
+        String prefix = BOT + botId + " ";
+        for (String line : golden) {
+            String move = line.startsWith(prefix) ? line.substring(prefix.length()) : line;
+            if (isMove(move.trim()))
+                moves.add(move.trim());
+        }
+        return moves;
+    }
+
+    private static boolean isMove(String word) {
+        for (Move move : Move.values()) {
+            if (move.toString().equals(word))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return A line for each move that differs from the golden one, or that
+     *         only one of them has
+     */
+    static List<String> diff(List<Turn> turns, List<String> golden) {
+        List<String> differences = new ArrayList<>();
+        for (int i = 0; i < Math.max(turns.size(), golden.size()); i++) {
+            String move = i < turns.size() ? turns.get(i).move : "-";
+            String expected = i < golden.size() ? golden.get(i) : "-";
+            if (!move.equals(expected))
+                differences.add(String.format("move %d: %s, expected %s", i + 1, move, expected));
+        }
+        return differences;
+    }
+
+    /**
+     * @return The median, 99th percentile and maximum time and allocation of
+     *         the moves, and how many of them took longer than time_per_move
+     */
+    static String report(List<Turn> turns, int timePerMove) {
+        if (turns.isEmpty())
+            return "no moves\n";
+
+        long[] nanos = new long[turns.size()];
+        long[] allocated = new long[turns.size()];
+        int nrLate = 0;
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] = turns.get(i).nanos;
+            allocated[i] = turns.get(i).allocated;
+            if (nanos[i] > timePerMove * 1000000L)
+                nrLate++;
+        }
+        Arrays.sort(nanos);
+        Arrays.sort(allocated);
+
+        return String.format("moves=%d time_per_move=%dms over=%d\n", nanos.length, timePerMove, nrLate) +
+                String.format("time: p50=%.2fms p99=%.2fms max=%.2fms\n",
+                        Metrics.percentile(nanos, 50) / 1e6, Metrics.percentile(nanos, 99) / 1e6, nanos[nanos.length - 1] / 1e6) +
+                String.format("alloc: p50=%dkB p99=%dkB max=%dkB\n",
+                        Metrics.percentile(allocated, 50) / 1024, Metrics.percentile(allocated, 99) / 1024, allocated[allocated.length - 1] / 1024);
+    }
+}
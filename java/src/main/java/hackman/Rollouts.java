@@ -0,0 +1,425 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * hackman.Rollouts
+ *
+ * Estimates the number of snippets that each move gains over the next
+ * rounds by playing them out at random many times. The bugs move as the
+ * engine moves them (see BugModel), and new ones come out of the bugs
+ * source after every few snippets picked up. Both players go for the
+ * nearest target while keeping away from the bugs.
+ *
+ * The rollouts are spread over a ForkJoin pool with a thread per core, and
+ * are done in batches until the deadline, so the number of rollouts adapts
+ * to the time there is.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+class Rollouts {
+
+    // Engine behaviour, see BookingGameEngine and BookingGameProcessor
+    private static final int ENEMY_SNIPPET_LOSS   = 4;
+    private static final int ENEMY_SPAWN_RATE     = 5;   // snippets per bug
+    private static final int SNIPPET_SPAWN_RATE   = 8;   // rounds per snippet
+    private static final Point[] SPAWN_POINTS = { new Point(9, 6), new Point(10, 6) };
+
+    private static final double RANDOM_MOVE = 0.1; // chance that a player moves at random
+    private static final int BATCH_SIZE     = 64;  // rollouts per move per batch
+    private static final int TASK_SIZE      = 16;  // rollouts per task
+    private static final int MAX_ROLLOUTS   = 4096;
+
+    /**
+     * The positions of everything that moves or can be picked up, which
+     * each rollout takes a copy of.
+     */
+    private static class Board {
+        final Maze maze;
+        final State state;
+        final int round;
+        final int[] players = new int[2];
+        final int[] snippets = new int[2];
+        final boolean[] hasWeapon = new boolean[2];
+        final int[] enemies;
+        final int[] headings;
+        final boolean[] items; // cell : snippet or weapon
+        final boolean[] weapons;
+        final int[] spawnCells;
+        final int[] openCells;
+        final int snippetsEaten;
+        final int maxRounds;
+
+        Board(State state, Maze maze, int round, int maxRounds) {
+            this.maze  = maze;
+            this.state = state;
+            this.round = round;
+            this.maxRounds = Math.max(1, maxRounds);
+            int nrCells = maze.getWidth() * maze.getHeight();
+
+            for (int id = 0; id < 2; id++) {
+                Player player = state.getPlayer(id);
+                this.players[id]   = maze.cell(player.getPosition());
+                this.snippets[id]  = player.getSnippets();
+                this.hasWeapon[id] = player.hasWeapon();
+            }
+            this.snippetsEaten = Math.max(0, this.snippets[0] + this.snippets[1]);
+
+            List<Integer> enemies = new ArrayList<>();
+            List<Integer> headings = new ArrayList<>();
+            Map<Point, Integer> prevEnemies = state.getPreviousEnemyPositions();
+            state.getEnemyPositions().forEach((pos, count) -> {
+                int heading = ArrivalTimes.heading(state, pos, prevEnemies);
+                for (int i = 0; i < count; i++) {
+                    enemies.add(maze.cell(pos));
+                    headings.add(heading);
+                }
+            });
+            this.enemies  = enemies.stream().mapToInt(Integer::intValue).toArray();
+            this.headings = headings.stream().mapToInt(Integer::intValue).toArray();
+
+            this.items   = new boolean[nrCells];
+            this.weapons = new boolean[nrCells];
+            state.getSnippetPositions().forEach(pos -> this.items[maze.cell(pos)] = true);
+            state.getWeaponPositions().forEach(pos -> {
+                this.items[maze.cell(pos)] = true;
+                this.weapons[maze.cell(pos)] = true;
+            });
+
+            List<Integer> openCells = new ArrayList<>();
+            for (int cell = 0; cell < nrCells; cell++) {
+                Point pos = maze.point(cell);
+                if (!State.isEntrance(pos.x, pos.y) && state.isPointValid(pos))
+                    openCells.add(cell);
+            }
+            this.openCells  = openCells.stream().mapToInt(Integer::intValue).toArray();
+            this.spawnCells = Arrays.stream(SPAWN_POINTS)
+                    .filter(p -> p.x < maze.getWidth() && p.y < maze.getHeight())
+                    .mapToInt(maze::cell)
+                    .toArray();
+        }
+    }
+
+    /**
+     * Plays out a range of rollouts for one first move.
+     */
+    private static class Task extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final Board board;
+        private final Move firstMove;
+        private final int depth;
+        private final long seed;
+        private final int from;
+        private final int to;
+
+        Task(Board board, Move firstMove, int depth, long seed, int from, int to) {
+            this.board     = board;
+            this.firstMove = firstMove;
+            this.depth     = depth;
+            this.seed      = seed;
+            this.from      = from;
+            this.to        = to;
+        }
+
+        @Override
+        protected Double compute() {
+            if (this.to - this.from > TASK_SIZE) {
+                int mid = (this.from + this.to) >>> 1;
+                Task left  = new Task(this.board, this.firstMove, this.depth, this.seed, this.from, mid);
+                Task right = new Task(this.board, this.firstMove, this.depth, this.seed, mid, this.to);
+                left.fork();
+                return right.compute() + left.join();
+            }
+
+            // The rollouts of this task run one after the other, so they share the scratch space
+            Move[] available = new Move[4];
+            double total = 0;
+            for (int i = this.from; i < this.to; i++) {
+                Rollout rollout = new Rollout(this.board, new SplittableRandom(this.seed * 31 + i), available);
+                total += rollout.play(this.firstMove, this.depth);
+            }
+            return total;
+        }
+    }
+
+    /**
+     * A single play-out of the next rounds.
+     */
+    private static class Rollout {
+        private final Board board;
+        private final Maze maze;
+        private final SplittableRandom random;
+        private final int[] players;
+        private final int[] snippets;
+        private final boolean[] hasWeapon;
+        private int[] enemies;
+        private int[] headings;
+        private int nrEnemies;
+        private final boolean[] items;
+        private final boolean[] weapons;
+        private final Move[] available;
+        private int snippetsEaten;
+        private int nrSpawned = 0;
+
+        /**
+         * @param available Scratch space for the moves available to a bug
+         */
+        Rollout(Board board, SplittableRandom random, Move[] available) {
+            this.board     = board;
+            this.available = available;
+            this.maze      = board.maze;
+            this.random    = random;
+            this.players   = board.players.clone();
+            this.snippets  = board.snippets.clone();
+            this.hasWeapon = board.hasWeapon.clone();
+            this.enemies   = board.enemies.clone();
+            this.headings  = board.headings.clone();
+            this.nrEnemies = board.enemies.length;
+            this.items     = board.items.clone();
+            this.weapons   = board.weapons.clone();
+            this.snippetsEaten = board.snippetsEaten;
+        }
+
+        /**
+         * @return The change in my snippets at the end of the rollout
+         */
+        int play(Move firstMove, int depth) {
+            int myId = this.board.state.getMyPlayer().getId();
+            int before = this.snippets[myId];
+
+            for (int n = 0; n < depth; n++) {
+                int round = this.board.round + n;
+                int[] prevPlayers = this.players.clone();
+                int[] prevEnemies = Arrays.copyOf(this.enemies, this.nrEnemies);
+
+                for (int id = 0; id < 2; id++) {
+                    Move move = (n == 0 && id == myId) ? firstMove : this.choosePlayerMove(id);
+                    this.players[id] = this.step(this.players[id], move);
+                }
+                for (int i = 0; i < this.nrEnemies; i++)
+                    this.moveEnemy(i, round);
+
+                this.pickUpItems();
+                this.collide(prevPlayers, prevEnemies);
+                this.spawn(round);
+            }
+            return this.snippets[myId] - before;
+        }
+
+        private int step(int cell, Move move) {
+            if (move == Move.PASS)
+                return cell;
+
+            Point pos = this.maze.point(cell);
+            return this.board.state.getValidMoves(pos).contains(move) ? pos.neighbour(move).cell() : cell;
+        }
+
+        private Move choosePlayerMove(int id) {
+            Point pos = this.maze.point(this.players[id]);
+            Set<Move> validMoves = this.board.state.getValidMoves(pos);
+            if (validMoves.isEmpty())
+                return Move.PASS;
+
+            Move[] moves = validMoves.toArray(new Move[0]);
+            if (this.random.nextDouble() < RANDOM_MOVE)
+                return moves[this.random.nextInt(moves.length)];
+
+            Move bestMove = Move.PASS;
+            int bestScore = Integer.MAX_VALUE;
+            for (Move move : moves) {
+                int next = pos.neighbour(move).cell();
+                int score = this.distanceToTarget(next, id);
+                if (!this.hasWeapon[id] && this.isNearEnemy(next))
+                    score += 2 * Maze.UNREACHABLE;
+
+                if (score < bestScore) {
+                    bestScore = score;
+                    bestMove = move;
+                }
+            }
+            return bestMove;
+        }
+
+        private int distanceToTarget(int cell, int id) {
+            int best = Maze.UNREACHABLE;
+            for (int target = 0; target < this.items.length; target++) {
+                if (this.items[target] && !(this.weapons[target] && this.hasWeapon[id]))
+                    best = Math.min(best, this.maze.distance(cell, target));
+            }
+            return best;
+        }
+
+        private boolean isNearEnemy(int cell) {
+            for (int i = 0; i < this.nrEnemies; i++) {
+                if (this.maze.distance(cell, this.enemies[i]) <= 1)
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Moves a bug as the engine does, see BugModel.
+         */
+        private void moveEnemy(int i, int round) {
+            int cell = this.enemies[i];
+            int heading = this.headings[i];
+
+            Move[] available = this.available;
+            int nrAvailable = BugModel.availableMoves(this.maze, cell, heading, available);
+
+            Move move;
+            if (nrAvailable == 0)
+                move = BugModel.turnBack(heading);
+            else if (nrAvailable == 1)
+                move = available[0];
+            else if (this.random.nextDouble() <= BugModel.chaseChance(round, this.board.maxRounds))
+                move = BugModel.chase(this.maze, cell, available, nrAvailable, this.players);
+            else
+                move = available[this.random.nextInt(nrAvailable)];
+
+            int next = move != Move.PASS ? this.maze.neighbour(cell, move) : -1;
+            if (next >= 0) {
+                this.enemies[i] = next;
+                this.headings[i] = move.ordinal();
+            }
+        }
+
+        private void pickUpItems() {
+            for (int id = 0; id < 2; id++) {
+                int cell = this.players[id];
+                if (!this.items[cell])
+                    continue;
+
+                if (this.weapons[cell]) {
+                    this.hasWeapon[id] = true;
+                    this.weapons[cell] = false;
+                }
+                else {
+                    this.snippets[id]++;
+                    this.snippetsEaten++;
+                }
+                this.items[cell] = false;
+            }
+        }
+
+        private void collide(int[] prevPlayers, int[] prevEnemies) {
+            for (int id = 0; id < 2; id++) {
+                for (int i = 0; i < this.nrEnemies; i++) {
+                    boolean isSwap = this.players[id] == prevEnemies[i] && this.enemies[i] == prevPlayers[id];
+                    if (!isSwap && this.players[id] != this.enemies[i])
+                        continue;
+
+                    if (this.hasWeapon[id])
+                        this.hasWeapon[id] = false;
+                    else
+                        this.snippets[id] -= ENEMY_SNIPPET_LOSS;
+
+                    // The bug is killed
+                    this.nrEnemies--;
+                    this.enemies[i]  = this.enemies[this.nrEnemies];
+                    this.headings[i] = this.headings[this.nrEnemies];
+                    prevEnemies[i]   = prevEnemies[this.nrEnemies];
+                    i--;
+                }
+            }
+        }
+
+        private void spawn(int round) {
+            int nrToSpawn = this.snippetsEaten / ENEMY_SPAWN_RATE
+                    - this.board.snippetsEaten / ENEMY_SPAWN_RATE - this.nrSpawned;
+            for (int i = 0; i < nrToSpawn && this.board.spawnCells.length > 0; i++) {
+                if (this.nrEnemies == this.enemies.length) {
+                    this.enemies  = Arrays.copyOf(this.enemies, this.enemies.length + 4);
+                    this.headings = Arrays.copyOf(this.headings, this.headings.length + 4);
+                }
+                int[] spawnCells = this.board.spawnCells;
+                this.enemies[this.nrEnemies]  = spawnCells[this.random.nextInt(spawnCells.length)];
+                this.headings[this.nrEnemies] = ArrivalTimes.UNKNOWN;
+                this.nrEnemies++;
+                this.nrSpawned++;
+            }
+
+            if (round % SNIPPET_SPAWN_RATE == 0 && this.board.openCells.length > 0) {
+                int[] openCells = this.board.openCells;
+                this.items[openCells[this.random.nextInt(openCells.length)]] = true;
+            }
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final int depth;
+    private final int maxRounds;
+
+    /**
+     * @param depth     The number of rounds that each rollout plays out
+     * @param maxRounds The number of rounds in the match, which sets how
+     *                  fast the bugs become more likely to chase
+     */
+    Rollouts(int depth, int maxRounds) {
+        this.pool      = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        this.depth     = depth;
+        this.maxRounds = maxRounds;
+    }
+
+    /**
+     * Plays out each of my valid moves (and passing) until the deadline.
+     *
+     * @param round    The current round
+     * @param deadline The System.nanoTime() by which to stop, or NO_DEADLINE
+     *                 to play out the most rollouts
+     * @return The average change in my snippets for each move
+     */
+    Map<Move, Double> evaluate(State state, int round, long deadline) {
+        Board board = new Board(state, state.getMaze(), round, this.maxRounds);
+
+        List<Move> moves = new ArrayList<>(state.getValidMoves(state.getMyPlayer().getPosition()));
+        moves.add(Move.PASS);
+
+        double[] totals = new double[moves.size()];
+        int nrRollouts = 0;
+        long batchTime = 0;
+        while (nrRollouts < MAX_ROLLOUTS &&
+                (deadline == Player.NO_DEADLINE || System.nanoTime() + batchTime - deadline < 0)) {
+            long start = System.nanoTime();
+
+            List<Task> tasks = new ArrayList<>();
+            for (int m = 0; m < moves.size(); m++) {
+                long seed = ((long) round << 32) ^ ((long) m << 24) ^ nrRollouts;
+                tasks.add(new Task(board, moves.get(m), this.depth, seed, 0, BATCH_SIZE));
+            }
+            tasks.forEach(this.pool::execute);
+            for (int m = 0; m < moves.size(); m++)
+                totals[m] += tasks.get(m).join();
+
+            nrRollouts += BATCH_SIZE;
+            batchTime = System.nanoTime() - start;
+        }
+
+        Map<Move, Double> deltas = new LinkedHashMap<>();
+        for (int m = 0; m < moves.size() && nrRollouts > 0; m++)
+            deltas.put(moves.get(m), totals[m] / nrRollouts);
+        return deltas;
+    }
+}
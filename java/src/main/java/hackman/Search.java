@@ -0,0 +1,436 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * hackman.Search
+ *
+ * A breadth-first search engine that can be reused from one search to the
+ * next. The search state is kept in arrays indexed by cell, which are
+ * invalidated by bumping a generation number rather than by clearing them,
+ * so a search allocates nothing but the Paths that it returns.
+ *
+ * Each thread has its own engine, which lives as long as the maze, so its
+ * arrays also serve as the working memory of the other searches of a
+ * state: the arrival times of the bugs and the intersection counts.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+class Search {
+
+    /**
+     * The summary of the path that a search is about to extend, so that
+     * the search condition can be tested without building the Path.
+     */
+    private static class Step implements PathSummary {
+        private Maze maze;
+        private int end;
+        private int nrMoves;
+        private int nrThreats;
+        private int nrIntersections;
+
+        @Override
+        public Point end() {
+            return this.maze.point(this.end);
+        }
+
+        @Override
+        public int nrMoves() {
+            return this.nrMoves;
+        }
+
+        @Override
+        public int nrThreats() {
+            return this.nrThreats;
+        }
+
+        @Override
+        public int nrIntersections() {
+            return this.nrIntersections;
+        }
+    }
+
+    private static final int MAX_LABELS = 4; // one per first move
+
+    private final Maze maze;
+    private final int width;
+    private final int nrCells;
+
+    // The search runs over nodes, which are cells labelled with the first
+    // move of the paths through them: node = label * nrCells + cell
+    private final int[] queue;
+    private final int[] parents;
+    private final byte[] moves;         // Move ordinal that leads to the node
+    private final int[] nrMoves;
+    private final int[] nrThreats;      // positions with threats along the path
+    private final int[] nrIntersections;
+    private final int[] unavoided;      // threats encountered along the path
+    private final int[] visited;        // generation : node
+    private final Path[] paths;         // paths built for the current generation
+    private final int[] built;          // generation : node
+
+    private final int[] targets;        // generation : cell
+    private final int[] avoid;          // generation : cell
+    private final int[] avoidCounts;
+    private final int[] firstSteps = new int[MAX_LABELS]; // label : cell
+    private final List<List<Path>> pathsPerLabel = new ArrayList<>(MAX_LABELS);
+    private int nrLabels;
+    private int generation = 0;
+    private int nrExpanded = 0;       // by the last breadth-first search
+
+    // Working memory of ArrivalTimes and intersectionsFrom(). The times and
+    // counts are returned, and stay valid until the next search of that kind.
+    private final int[] arrivalTimes;
+    private final int[] arrivalQueue;
+    private final int[] intersectionCounts;
+    private final int[] levelQueue;
+
+    private final Step step = new Step();
+    private static final Move[] MOVES = Move.values();
+
+    Search(Maze maze) {
+        this.maze    = maze;
+        this.width   = maze.getWidth();
+        this.nrCells = maze.getWidth() * maze.getHeight();
+
+        int nrNodes = MAX_LABELS * this.nrCells;
+        this.queue           = new int[nrNodes];
+        this.parents         = new int[nrNodes];
+        this.moves           = new byte[nrNodes];
+        this.nrMoves         = new int[nrNodes];
+        this.nrThreats       = new int[nrNodes];
+        this.nrIntersections = new int[nrNodes];
+        this.unavoided       = new int[nrNodes];
+        this.visited         = new int[nrNodes];
+        this.paths           = new Path[nrNodes];
+        this.built           = new int[nrNodes];
+
+        this.targets     = new int[this.nrCells];
+        this.avoid       = new int[this.nrCells];
+        this.avoidCounts = new int[this.nrCells];
+        for (int label = 0; label < MAX_LABELS; label++)
+            this.pathsPerLabel.add(new ArrayList<>());
+
+        this.arrivalTimes = new int[ArrivalTimes.nrNodes(maze)];
+        this.arrivalQueue = new int[ArrivalTimes.nrNodes(maze)];
+        this.intersectionCounts = new int[ArrivalTimes.nrNodes(maze)];
+        this.levelQueue   = new int[ArrivalTimes.nrNodes(maze)];
+
+        this.step.maze = maze;
+    }
+
+    boolean fits(Maze maze) {
+        return this.maze == maze;
+    }
+
+    private void nextGeneration() {
+        if (++this.generation == 0) {
+            Arrays.fill(this.visited, 0);
+            Arrays.fill(this.built, 0);
+            Arrays.fill(this.targets, 0);
+            Arrays.fill(this.avoid, 0);
+            this.generation = 1;
+        }
+    }
+
+    private int cell(Point p) {
+        return this.maze.cell(p);
+    }
+
+    private Point point(int cell) {
+        return this.maze.point(cell);
+    }
+
+    /**
+     * Does a breadth-first search with the same semantics as
+     * State.findShortestPaths().
+     */
+    List<Path> findShortestPaths(State state, Point origin, Set<Point> targets, Map<Point, Integer> avoid, int threatsAllowed, Predicate<? super PathSummary> searchWhile) {
+        this.prepare(targets, avoid);
+        this.nrLabels = 1;
+        this.firstSteps[0] = -1;
+
+        List<Path> paths = new ArrayList<>();
+        this.search(state, cell(origin), threatsAllowed, searchWhile, Collections.singletonList(paths));
+        return paths;
+    }
+
+    /**
+     * Does a single breadth-first search with the same semantics as
+     * State.findShortestPathsPerDirection(). Every node is labelled with
+     * the first move of the path that reaches it, and each label is
+     * searched as if the first steps of the other labels were walls.
+     * Since the labels share one queue in which each label keeps its own
+     * order, the paths found for each label are the same as those of a
+     * separate search per direction. Paths of the same length and threats
+     * are ordered by their moves, so ties don't depend on the order of
+     * the labels.
+     */
+    List<Path> findShortestPathsPerDirection(State state, Point origin, Set<Point> targets, Map<Point, Integer> avoid, int threatsAllowed, Predicate<? super PathSummary> searchWhile) {
+        this.prepare(targets, avoid);
+
+        int start = cell(origin);
+        this.nrLabels = 0;
+        for (Move move : state.validMoves(start)) {
+            this.firstSteps[this.nrLabels++] = start + move.dx + move.dy * this.width;
+        }
+
+        for (List<Path> paths : this.pathsPerLabel)
+            paths.clear();
+
+        this.search(state, start, threatsAllowed, searchWhile, this.pathsPerLabel);
+
+        List<Path> allPaths = new ArrayList<>();
+        for (int label = 0; label < this.nrLabels; label++) {
+            allPaths.addAll(this.pathsPerLabel.get(label));
+            this.pathsPerLabel.get(label).clear();
+        }
+
+        allPaths.sort(Comparator.comparing(Path::nrMoves).thenComparing(Path::nrThreats).thenComparing(Path::compareMoves));
+        return allPaths;
+    }
+
+    private void prepare(Set<Point> targets, Map<Point, Integer> avoid) {
+        this.nextGeneration();
+        int gen = this.generation;
+
+        if (targets != null) {
+            for (Point target : targets)
+                this.targets[cell(target)] = gen;
+        }
+        if (avoid != null) {
+            for (Map.Entry<Point, Integer> e : avoid.entrySet()) {
+                int cell = cell(e.getKey());
+                this.avoid[cell] = gen;
+                this.avoidCounts[cell] = e.getValue();
+            }
+        }
+    }
+
+    /**
+     * Returns whether a cell is the first step of another label than the
+     * given one, and may therefore not be entered.
+     */
+    private boolean isBlocked(int cell, int label) {
+        for (int i = 0; i < this.nrLabels; i++) {
+            if (this.firstSteps[i] == cell)
+                return i != label;
+        }
+        return false;
+    }
+
+    private void search(State state, int start, int threatsAllowed, Predicate<? super PathSummary> searchWhile, List<List<Path>> pathsPerLabel) {
+        int gen = this.generation;
+        int head = 0;
+        int tail = 0;
+
+        for (int label = 0; label < this.nrLabels; label++) {
+            int node = label * this.nrCells + start;
+            this.queue[tail++] = node;
+            this.visited[node]         = gen;
+            this.parents[node]         = -1;
+            this.nrMoves[node]         = 0;
+            this.nrThreats[node]       = 0;
+            this.nrIntersections[node] = 0;
+            this.unavoided[node]       = 0;
+        }
+
+        // Do a breadth-first search
+        search:
+        while (head < tail) {
+            int node = this.queue[head++];
+            int label = node / this.nrCells;
+            int cell = node - label * this.nrCells;
+            List<Path> paths = pathsPerLabel.get(label);
+
+            for (Move nextMove : state.validMoves(cell)) {
+                int next = cell + nextMove.dx + nextMove.dy * this.width;
+                int nextNode = label * this.nrCells + next;
+                int nrThreats = this.avoid[next] == gen ? this.avoidCounts[next] : 0;
+                boolean isBlocked = this.firstSteps[label] >= 0 && isBlocked(next, label);
+                boolean isIntersection = state.isIntersection(next);
+
+                if (searchWhile != null) {
+                    this.step.end = next;
+                    this.step.nrMoves = this.nrMoves[node] + 1;
+                    this.step.nrThreats = this.nrThreats[node] + (nrThreats > 0 || isBlocked ? 1 : 0);
+                    this.step.nrIntersections = this.nrIntersections[node] + (isIntersection ? 1 : 0);
+
+                    if (!searchWhile.test(this.step)) {
+                        paths.add(this.buildPath(state, node));
+                        continue search;
+                    }
+                }
+
+                if (this.visited[nextNode] == gen || isBlocked)
+                    continue;
+
+                int newUnavoided = this.unavoided[node];
+                if (this.avoid[next] == gen) {
+                    if (newUnavoided + nrThreats <= threatsAllowed)
+                        newUnavoided += nrThreats;
+                    else
+                        continue; // We've reached a position to avoid - Don't add this path
+                }
+
+                this.visited[nextNode]         = gen;
+                this.parents[nextNode]         = node;
+                this.moves[nextNode]           = (byte) nextMove.ordinal();
+                this.nrMoves[nextNode]         = this.nrMoves[node] + 1;
+                this.nrThreats[nextNode]       = this.nrThreats[node] + (nrThreats > 0 ? 1 : 0);
+                this.nrIntersections[nextNode] = this.nrIntersections[node] + (isIntersection ? 1 : 0);
+                this.unavoided[nextNode]       = newUnavoided;
+
+                if (this.targets[next] == gen)
+                    paths.add(this.buildPath(state, nextNode));
+
+                this.queue[tail++] = nextNode;
+            }
+        }
+        this.nrExpanded = head;
+    }
+
+    /**
+     * @return The number of nodes that the last breadth-first search expanded
+     */
+    int getNrExpanded() {
+        return this.nrExpanded;
+    }
+
+    /**
+     * Works out ArrivalTimes.ofEnemies() for the state, with the queue in
+     * the working memory of this engine.
+     *
+     * @param times   Gets the arrival time for each node
+     * @param sources Gets the cell of the bug that got to each node first
+     * @return The arrival time for each cell
+     */
+    int[] enemyArrivalTimes(State state, int[] times, int[] sources) {
+        return ArrivalTimes.ofEnemies(state, this.maze, times, sources, this.arrivalQueue);
+    }
+
+    /**
+     * Works out ArrivalTimes.toCell() for the target in the working memory
+     * of this engine.
+     *
+     * @return The rounds that a bug needs from each node = cell * nrHeadings + heading,
+     *         until the next call
+     */
+    int[] bugTimesTo(State state, int target) {
+        ArrivalTimes.toCell(state, this.maze, target, this.arrivalTimes, this.arrivalQueue);
+        return this.arrivalTimes;
+    }
+
+    /**
+     * Counts the fewest intersections that a path from the origin passes
+     * through on its way to each cell, including the cell itself. Like the
+     * bugs, a path doesn't turn back on itself, so the count is kept for
+     * each cell and the last move of the path. Since a move adds either
+     * no intersection or one, the search works through the counts one at
+     * a time, each as a breadth-first search.
+     *
+     * @return The count for each node = cell * nrHeadings + last move, or
+     *         Maze.UNREACHABLE, until the next call
+     */
+    int[] intersectionsFrom(State state, int origin) {
+        int nrHeadings = MOVES.length;
+        int[] counts = this.intersectionCounts;
+        Arrays.fill(counts, Maze.UNREACHABLE);
+
+        int[] level = this.arrivalQueue;
+        int[] nextLevel = this.levelQueue;
+        int nrLevel = 0;
+        int nrNextLevel = 0;
+        for (Move move : state.validMoves(origin)) {
+            int next = this.maze.neighbour(origin, move);
+            int node = ArrivalTimes.node(next, move.ordinal());
+            if (state.isIntersection(next)) {
+                counts[node] = 1;
+                nextLevel[nrNextLevel++] = node;
+            }
+            else {
+                counts[node] = 0;
+                level[nrLevel++] = node;
+            }
+        }
+
+        for (int count = 0; nrLevel > 0 || nrNextLevel > 0; count++) {
+            for (int i = 0; i < nrLevel; i++) {
+                int node = level[i];
+                if (counts[node] != count)
+                    continue;
+
+                int cell = node / nrHeadings;
+                Move back = ArrivalTimes.reverse(MOVES[node % nrHeadings]);
+                for (Move move : state.validMoves(cell)) {
+                    int next = this.maze.neighbour(cell, move);
+                    if (move == back || next == origin)
+                        continue;
+
+                    int nextNode = ArrivalTimes.node(next, move.ordinal());
+                    if (!state.isIntersection(next) && counts[nextNode] > count) {
+                        counts[nextNode] = count;
+                        level[nrLevel++] = nextNode;
+                    }
+                    else if (state.isIntersection(next) && counts[nextNode] > count + 1) {
+                        counts[nextNode] = count + 1;
+                        nextLevel[nrNextLevel++] = nextNode;
+                    }
+                }
+            }
+
+            int[] done = level;
+            level = nextLevel;
+            nextLevel = done;
+            nrLevel = nrNextLevel;
+            nrNextLevel = 0;
+        }
+        return counts;
+    }
+
+    /**
+     * Builds the Path that the search followed to reach the given node.
+     * Paths share their beginnings, so the nodes built for one cell are
+     * reused by any other cell that is reached through it.
+     */
+    private Path buildPath(State state, int node) {
+        int gen = this.generation;
+        if (this.built[node] == gen)
+            return this.paths[node];
+
+        Path path;
+        int cell = node % this.nrCells;
+        int parent = this.parents[node];
+        if (parent < 0) {
+            path = new Path(point(cell));
+        }
+        else {
+            int nrThreats = this.avoid[cell] == gen ? this.avoidCounts[cell] : 0;
+            path = new Path(buildPath(state, parent), point(cell), MOVES[this.moves[node]], nrThreats, state);
+        }
+
+        this.paths[node] = path;
+        this.built[node] = gen;
+        return path;
+    }
+}
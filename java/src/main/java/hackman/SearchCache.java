@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * hackman.SearchCache
+ *
+ * The results of the searches done on a state, so that the same search
+ * asked for by both players (or twice by the same one) is only done once.
+ * Each state has its own cache, which therefore only lives for a turn.
+ *
+ * Searches are only cached when their condition is a SearchLimit (or
+ * there is none), since arbitrary predicates cannot be compared.
+ *
+ * The cache can be shared by the threads that analyse each player. Two
+ * threads may then both do the same search, but they find the same paths.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+class SearchCache {
+
+    enum Kind { SHORTEST, PER_DIRECTION }
+
+    private static class Key {
+        private final Kind kind;
+        private final int origin;
+        private final int[] targets;  // sorted cells
+        private final int[] avoid;    // cell and count pairs, sorted by cell
+        private final int threatsAllowed;
+        private final SearchLimit searchWhile;
+        private final int hash;
+
+        Key(Kind kind, int origin, int[] targets, int[] avoid, int threatsAllowed, SearchLimit searchWhile) {
+            this.kind           = kind;
+            this.origin         = origin;
+            this.targets        = targets;
+            this.avoid          = avoid;
+            this.threatsAllowed = threatsAllowed;
+            this.searchWhile    = searchWhile;
+
+            int hash = Objects.hash(kind, origin, threatsAllowed, searchWhile);
+            hash = hash * 31 + Arrays.hashCode(targets);
+            this.hash = hash * 31 + Arrays.hashCode(avoid);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+
+            Key other = (Key) obj;
+            return this.hash == other.hash &&
+                    this.kind == other.kind &&
+                    this.origin == other.origin &&
+                    this.threatsAllowed == other.threatsAllowed &&
+                    Objects.equals(this.searchWhile, other.searchWhile) &&
+                    Arrays.equals(this.targets, other.targets) &&
+                    Arrays.equals(this.avoid, other.avoid);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    private final Maze maze;
+    private final Map<Key, List<Path>> results = new ConcurrentHashMap<>();
+    private final AtomicInteger nrHits = new AtomicInteger();
+    private final AtomicInteger nrMisses = new AtomicInteger();
+
+    SearchCache(Maze maze) {
+        this.maze = maze;
+    }
+
+    /**
+     * Looks up the result of a search, doing the search if it has not
+     * been done yet.
+     *
+     * @param search Does the search when the result is not cached
+     * @return A copy of the paths found, which the caller may change
+     */
+    List<Path> get(Kind kind, Point origin, Set<Point> targets, Map<Point, Integer> avoid, int threatsAllowed,
+                   Predicate<? super PathSummary> searchWhile, Supplier<List<Path>> search) {
+        if (searchWhile != null && !(searchWhile instanceof SearchLimit))
+            return search.get();
+
+        Key key = new Key(kind, this.maze.cell(origin), cells(targets), cellCounts(avoid), threatsAllowed, (SearchLimit) searchWhile);
+        List<Path> paths = this.results.get(key);
+        if (paths != null) {
+            this.nrHits.incrementAndGet();
+        }
+        else {
+            this.nrMisses.incrementAndGet();
+            paths = search.get();
+            this.results.putIfAbsent(key, paths);
+        }
+        return new ArrayList<>(paths);
+    }
+
+    private int[] cells(Set<Point> points) {
+        if (points == null)
+            return new int[0];
+
+        int[] cells = new int[points.size()];
+        int i = 0;
+        for (Point p : points)
+            cells[i++] = this.maze.cell(p);
+
+        Arrays.sort(cells);
+        return cells;
+    }
+
+    private int[] cellCounts(Map<Point, Integer> counts) {
+        if (counts == null)
+            return new int[0];
+
+        int[] cells = cells(counts.keySet());
+        int[] cellCounts = new int[2 * cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            cellCounts[2 * i]     = cells[i];
+            cellCounts[2 * i + 1] = counts.get(this.maze.point(cells[i]));
+        }
+        return cellCounts;
+    }
+
+    int getNrHits() {
+        return this.nrHits.get();
+    }
+
+    int getNrMisses() {
+        return this.nrMisses.get();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import java.util.function.Predicate;
+
+/**
+ * hackman.SearchLimit
+ *
+ * A condition for when a search can continue, as a maximum number of
+ * moves and/or intersections. Unlike a lambda, two limits with the same
+ * maximums are equal, so the results of a search can be cached by them.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+final class SearchLimit implements Predicate<PathSummary> {
+
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private final int maxMoves;
+    private final int maxIntersections;
+    private final boolean isEither;
+
+    private SearchLimit(int maxMoves, int maxIntersections, boolean isEither) {
+        this.maxMoves         = maxMoves;
+        this.maxIntersections = maxIntersections;
+        this.isEither         = isEither;
+    }
+
+    /**
+     * @return A limit that holds while a path has no more than the given moves
+     */
+    static SearchLimit moves(int maxMoves) {
+        return new SearchLimit(maxMoves, NONE, false);
+    }
+
+    /**
+     * @return A limit that holds while a path passes no more than the given intersections
+     */
+    static SearchLimit intersections(int maxIntersections) {
+        return new SearchLimit(NONE, maxIntersections, false);
+    }
+
+    /**
+     * @return A limit that holds while either of the maximums is not exceeded
+     */
+    static SearchLimit movesOrIntersections(int maxMoves, int maxIntersections) {
+        return new SearchLimit(maxMoves, maxIntersections, true);
+    }
+
+    @Override
+    public boolean test(PathSummary path) {
+        boolean withinMoves = path.nrMoves() <= this.maxMoves;
+        boolean withinIntersections = path.nrIntersections() <= this.maxIntersections;
+
+        return this.isEither
+                ? withinMoves || withinIntersections
+                : withinMoves && withinIntersections;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof SearchLimit))
+            return false;
+
+        SearchLimit other = (SearchLimit) obj;
+        return this.maxMoves == other.maxMoves &&
+                this.maxIntersections == other.maxIntersections &&
+                this.isEither == other.isEither;
+    }
+
+    @Override
+    public int hashCode() {
+        return (this.maxMoves * 31 + this.maxIntersections) * 2 + (this.isEither ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        String moves = "moves <= " + this.maxMoves;
+        String intersections = "intersections <= " + this.maxIntersections;
+
+        if (this.maxIntersections == NONE)
+            return moves;
+        if (this.maxMoves == NONE)
+            return intersections;
+        return moves + (this.isEither ? " || " : " && ") + intersections;
+    }
+}
@@ -19,9 +19,11 @@
 
 package hackman;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 /**
  * hackman.State
@@ -30,54 +32,141 @@ import java.util.stream.Collectors;
  */
 public class State {
 
-    private class Pair<K, V> extends AbstractMap.SimpleImmutableEntry<K, V> {
-        Pair(K key, V value) {
-            super(key, value);
-        }
-    }
-
     private State prevState;
     private Player myPlayer;
     private Player oppPlayer;
     private Map<Integer, Player> players; // id : player
 
-    private static final Set<Point> BUG_ENTRANCE_1 = new HashSet<>(Arrays.asList(
-            new Point(9, 6), new Point(9, 7), new Point(8, 7)));
-    private static final Set<Point> BUG_ENTRANCE_2 = new HashSet<>(Arrays.asList(
-            new Point(10, 6), new Point(10, 7), new Point(11, 7)));
-
+    // Contents of a cell, packed into a single byte per cell
+    static final int WALL        = 0x01;
+    static final int SNIPPET     = 0x02;
+    static final int WEAPON      = 0x04;
+    static final int PLAYER_0    = 0x08;
+    static final int PLAYER_1    = 0x10;
+    static final int ENEMY_SHIFT = 5;
+    static final int MAX_ENEMIES = 0x07; // enemy count saturates at this value
+    static final int ENEMY_MASK  = MAX_ENEMIES << ENEMY_SHIFT;
+
+    // Player flags, in playerFlags shifted by twice the player id
+    private static final int ARMED     = 0x01;
+    private static final int PARALYSED = 0x02;
+
+    // The bugs source (which is marked as a wall) by gate number
+    private static final int[][] BUG_ENTRANCES = {
+            {9, 6, 9, 7, 8, 7},
+            {10, 6, 10, 7, 11, 7}
+    };
+
+    // The order in which neighbouring cells are expanded during a search
+    private static final Move[] SEARCH_ORDER = {Move.LEFT, Move.DOWN, Move.UP, Move.RIGHT};
+
+    // The sets of valid moves for each combination of open neighbours, and
+    // the same moves as arrays, which the searches can loop over without
+    // allocating an iterator
+    private static final Set<Move>[] VALID_MOVES = initValidMoves();
+    private static final Move[][] VALID_MOVE_ARRAYS = initValidMoveArrays();
+
+    private Maze maze;
+    private Game game;
+    private ExecutorService executor;
+    private Metrics metrics;
+    private volatile boolean isExpired = false;
+    private SearchCache searchCache;
     private int width;
     private int height;
-    private String[][] field = null;
-
-    private Map<Integer, Point> playerPositions; // <id, position>
-    private Map<Point, Integer> enemyPositions;  // <position, count>
-    private Set<Point> snippetPositions;
-    private Set<Point> weaponPositions;
+    private byte[] grid = null; // index = x + y * width
+    private int[] playerCells;   // id : cell index
+    private boolean[] openEntrances;
+    private int[] changedCells = null;  // cells that differ from prevState
+    private int changedContent = ~0;    // content bits that differ from prevState
+    private long boardHash;   // Zobrist hash of the cell contents
+    private long hash;        // boardHash and the player flags
+    private int playerFlags;  // ARMED and PARALYSED bits, shifted by the player id
+
+    private Map<Point, Integer> enemyPositions = null; // <position, count>
+    private Set<Point> snippetPositions = null;
+    private Set<Point> weaponPositions = null;
+    private int[] enemyArrivalTimes = null; // cell : rounds
+    private int[] enemyHeadingTimes = null; // ArrivalTimes.node(cell, heading) : rounds
+    private int[] enemySources = null;      // ArrivalTimes.node(cell, heading) : cell of the first bug
 
     private State() {
         this.players = new HashMap<>(2);
-        this.playerPositions  = new HashMap<>();
-        this.enemyPositions   = new HashMap<>();
-        this.snippetPositions = new HashSet<>();
-        this.weaponPositions  = new HashSet<>();
+        this.playerCells = new int[] {-1, -1};
+        this.openEntrances = new boolean[BUG_ENTRANCES.length];
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Set<Move>[] initValidMoves() {
+        Set<Move>[] validMoves = new Set[1 << SEARCH_ORDER.length];
+        for (int mask = 0; mask < validMoves.length; mask++) {
+            Set<Move> moves = new LinkedHashSet<>();
+            for (int i = 0; i < SEARCH_ORDER.length; i++) {
+                if ((mask & (1 << i)) != 0)
+                    moves.add(SEARCH_ORDER[i]);
+            }
+            validMoves[mask] = Collections.unmodifiableSet(moves);
+        }
+        return validMoves;
+    }
+
+    private static Move[][] initValidMoveArrays() {
+        Move[][] validMoves = new Move[VALID_MOVES.length][];
+        for (int mask = 0; mask < validMoves.length; mask++)
+            validMoves[mask] = VALID_MOVES[mask].toArray(new Move[0]);
+        return validMoves;
     }
 
     public State(String field, List<Player> players, State prevState, Game game) {
-        this();
+        this(field.getBytes(StandardCharsets.ISO_8859_1), field.length(), players, prevState, game);
+    }
 
-        this.prevState = prevState;
+    /**
+     * Creates the state of a field as it was read from the engine.
+     *
+     * @param field  The characters of the field
+     * @param length The number of characters in use
+     */
+    State(byte[] field, int length, List<Player> players, State prevState, Game game) {
+        this();
 
         this.width  = game.getFieldWidth();
         this.height = game.getFieldHeight();
-        this.field  = new String[this.width][this.height];
-        this.parseFromString(field);
+        this.grid   = new byte[this.width * this.height];
+        this.parseField(field, length);
+
+        if (prevState != null && prevState.grid.length == this.grid.length && prevState.width == this.width) {
+            this.prevState = prevState;
+            this.findChanges();
+        }
 
+        // The walls never change during a match
+        if (this.prevState != null && (this.changedContent & WALL) == 0)
+            this.maze = this.prevState.maze;
+        else
+            this.maze = game.getMaze(this.width, this.height, this.grid);
+        this.game = game;
+        this.executor = game.getExecutor();
+        this.metrics = game.getMetrics();
+        this.searchCache = new SearchCache(this.maze);
+        this.boardHash = this.hashBoard();
+        this.hash = this.boardHash;
+
+        Zobrist zobrist = this.maze.zobrist();
         for (Player player : players) {
             int playerId = player.getId();
-            player.setPosition(this.playerPositions.get(playerId));
+            player.setPosition(this.getPlayerPosition(playerId));
             player.setState(this);
 
+            if (player.hasWeapon()) {
+                this.playerFlags |= ARMED << 2 * playerId;
+                this.hash ^= zobrist.armed(playerId);
+            }
+            if (player.isParalyzed()) {
+                this.playerFlags |= PARALYSED << 2 * playerId;
+                this.hash ^= zobrist.paralysed(playerId);
+            }
+
             if (playerId == game.getMyId())
                 this.myPlayer = player;
             else
@@ -88,48 +177,190 @@ public class State {
     }
 
     /**
-     * Parses input string from the engine and stores it in this.field.
-     * Also stores several interesting points.
+     * Parses the field from the engine and stores it in this.grid.
+     * Each cell is a comma-separated list of characters, and multiple
+     * things can be on the same position.
      *
-     * @param input String input from the engine
+     * @param input  The characters of the field
+     * @param length The number of characters in use
      */
-    private void parseFromString(String input) {
+    private void parseField(byte[] input, int length) {
         if (this.height == 0)
             throw new RuntimeException("height must be defined");
         if (this.width == 0)
             throw new RuntimeException("width must be defined");
 
-        String[] cells = input.split(",");
-
-        for (int y = 0; y < this.height; y++) {
-            for (int x = 0; x < this.width; x++) {
-                String cell = cells[x + (y * this.width)];
-                this.field[x][y] = cell;
-
-                // Multiple things can be on same position
-                for (char c : cell.toCharArray()) {
-                    Point position = new Point(x, y);
-                    switch (c) {
-                        case 'C':
-                            this.snippetPositions.add(position);
-                            break;
-                        case 'E':
-                            this.enemyPositions.compute(position, (k, v) -> v != null ? v + 1 : 1);
-                            if (BUG_ENTRANCE_1.contains(position) || BUG_ENTRANCE_2.contains(position))
-                                this.field[x][y] = "E";
-                            break;
-                        case 'W':
-                            this.weaponPositions.add(position);
-                            break;
-                        default:
-                            if (Character.isDigit(c)) {
-                                int id = Character.getNumericValue(c);
-                                this.playerPositions.put(id, position);
-                            }
+        int cell = 0;
+        for (int i = 0; i < length; i++) {
+            char c = (char) input[i];
+            switch (c) {
+                case ',':
+                    cell++;
+                    break;
+                case 'x':
+                    this.grid[cell] |= WALL;
+                    break;
+                case 'C':
+                    this.grid[cell] |= SNIPPET;
+                    break;
+                case 'W':
+                    this.grid[cell] |= WEAPON;
+                    break;
+                case 'E':
+                    int nrEnemies = (this.grid[cell] & ENEMY_MASK) >> ENEMY_SHIFT;
+                    if (nrEnemies < MAX_ENEMIES)
+                        this.grid[cell] += 1 << ENEMY_SHIFT;
+
+                    int entrance = entranceOf(cell % this.width, cell / this.width);
+                    if (entrance >= 0)
+                        this.openEntrances[entrance] = true;
+                    break;
+                default:
+                    if (c == '0' || c == '1') {
+                        int id = c - '0';
+                        this.grid[cell] |= id == 0 ? PLAYER_0 : PLAYER_1;
+                        this.playerCells[id] = cell;
                     }
-                }
             }
         }
+        if (cell != this.grid.length - 1)
+            throw new RuntimeException(String.format("Expected %d cells but found %d", this.grid.length, cell + 1));
+    }
+
+    /**
+     * Compares the grid with the one of the previous state, to find out
+     * which cells have changed since.
+     */
+    private void findChanges() {
+        byte[] prevGrid = this.prevState.grid;
+        int[] changes = new int[this.grid.length];
+        int nrChanges = 0;
+        int changedContent = 0;
+
+        for (int cell = 0; cell < this.grid.length; cell++) {
+            int diff = (this.grid[cell] ^ prevGrid[cell]) & 0xFF;
+            if (diff != 0) {
+                changes[nrChanges++] = cell;
+                changedContent |= diff;
+            }
+        }
+        this.changedCells = Arrays.copyOf(changes, nrChanges);
+        this.changedContent = changedContent;
+    }
+
+    /**
+     * Works out the hash of the cell contents. When the maze is that of the
+     * previous state, only the cells that have changed since are hashed.
+     */
+    private long hashBoard() {
+        Zobrist zobrist = this.maze.zobrist();
+        if (this.prevState != null && this.prevState.maze == this.maze) {
+            long hash = this.prevState.boardHash;
+            for (int cell : this.changedCells)
+                hash ^= zobrist.content(cell, this.prevState.grid[cell]) ^ zobrist.content(cell, this.grid[cell]);
+            return hash;
+        }
+
+        long hash = 0;
+        for (int cell = 0; cell < this.grid.length; cell++)
+            hash ^= zobrist.content(cell, this.grid[cell]);
+        return hash;
+    }
+
+    /**
+     * Returns the Zobrist hash of the contents of the field and the flags
+     * of the players as they were when this state was created.
+     *
+     * @return The 64-bit hash
+     */
+    long getHash() {
+        return this.hash;
+    }
+
+    /**
+     * Works out the hash of this state after the given player makes the
+     * given move and picks up what is there, without creating the state.
+     * Further changes can be applied to the result with the keys of the
+     * maze's Zobrist.
+     *
+     * @param playerId The id of the player
+     * @param move     The move of the player
+     * @return The 64-bit hash after the move
+     */
+    long hashAfterMove(int playerId, Move move) {
+        int from = this.playerCells[playerId];
+        if (from < 0 || move == Move.PASS || !getValidMoves(from % this.width, from / this.width).contains(move))
+            return this.hash;
+
+        Zobrist zobrist = this.maze.zobrist();
+        int to = this.maze.neighbour(from, move);
+        long hash = this.hash ^ zobrist.player(playerId, from) ^ zobrist.player(playerId, to);
+        if ((this.grid[to] & SNIPPET) != 0)
+            hash ^= zobrist.snippet(to);
+        if ((this.grid[to] & WEAPON) != 0) {
+            hash ^= zobrist.weapon(to);
+            if ((this.playerFlags & ARMED << 2 * playerId) == 0)
+                hash ^= zobrist.armed(playerId);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the cells whose content differs from the previous state, so
+     * that anything derived from the previous state can be kept up to date
+     * rather than recomputed.
+     *
+     * @return The changed cells in increasing order, or null if there is
+     *         no previous state to compare with
+     */
+    int[] getChangedCells() {
+        return this.changedCells;
+    }
+
+    /**
+     * Returns whether any of the given content (e.g. SNIPPET or ENEMY_MASK)
+     * differs from the previous state. This is always true when there is
+     * no previous state.
+     */
+    boolean hasChanged(int content) {
+        return (this.changedContent & content) != 0;
+    }
+
+    /**
+     * Drops the reference to the previous state, so that it can be garbage
+     * collected. Only this state's own positions stay available.
+     */
+    void forgetPreviousState() {
+        this.prevState = null;
+        this.changedCells = null;
+        this.changedContent = ~0;
+    }
+
+    static Move[] searchOrder() {
+        return SEARCH_ORDER;
+    }
+
+    static boolean isEntrance(int x, int y) {
+        return entranceOf(x, y) >= 0;
+    }
+
+    /**
+     * Returns the bugs source entrance that the given coordinates are in.
+     *
+     * @return The entrance number, or -1 if it is not an entrance
+     */
+    private static int entranceOf(int x, int y) {
+        if (y != 6 && y != 7)
+            return -1;
+
+        for (int i = 0; i < BUG_ENTRANCES.length; i++) {
+            int[] entrance = BUG_ENTRANCES[i];
+            for (int j = 0; j < entrance.length; j += 2) {
+                if (entrance[j] == x && entrance[j + 1] == y)
+                    return i;
+            }
+        }
+        return -1;
     }
 
     public Player getPlayer(int playerId) {
@@ -144,10 +375,86 @@ public class State {
     //    return this.oppPlayer;
     //}
 
+    private Point getPlayerPosition(int playerId) {
+        int cell = this.playerCells[playerId];
+        return cell >= 0 ? this.maze.point(cell) : null;
+    }
+
     public Map<Point, Integer> getEnemyPositions() {
+        if (this.enemyPositions == null && !hasChanged(ENEMY_MASK))
+            this.enemyPositions = this.prevState.enemyPositions;
+
+        if (this.enemyPositions == null) {
+            this.enemyPositions = new HashMap<>();
+            for (int cell = 0; cell < this.grid.length; cell++) {
+                int nrEnemies = (this.grid[cell] & ENEMY_MASK) >> ENEMY_SHIFT;
+                if (nrEnemies > 0)
+                    this.enemyPositions.put(this.maze.point(cell), nrEnemies);
+            }
+        }
         return this.enemyPositions;
     }
 
+    /**
+     * Gets the earliest round in which any enemy bug can reach each cell,
+     * taking into account that bugs do not turn back.
+     *
+     * @return The arrival times, index = cell
+     */
+    int[] getEnemyArrivalTimes() {
+        if (this.enemyArrivalTimes == null) {
+            int nrNodes = ArrivalTimes.nrNodes(this.maze);
+            this.enemyHeadingTimes = new int[nrNodes];
+            this.enemySources = new int[nrNodes];
+            this.enemyArrivalTimes = this.search().enemyArrivalTimes(this, this.enemyHeadingTimes, this.enemySources);
+        }
+        return this.enemyArrivalTimes;
+    }
+
+    /**
+     * Like getEnemyArrivalTimes(), but for each heading that a bug can
+     * arrive at a cell with.
+     *
+     * @return The arrival times, index = ArrivalTimes.node(cell, heading)
+     */
+    int[] getEnemyHeadingTimes() {
+        this.getEnemyArrivalTimes();
+        return this.enemyHeadingTimes;
+    }
+
+    /**
+     * Gets the cell of the bug that is the first to arrive at each cell
+     * with each heading, from the same search as getEnemyArrivalTimes().
+     *
+     * @return The cells of the bugs, index = ArrivalTimes.node(cell, heading)
+     */
+    int[] getEnemySources() {
+        this.getEnemyArrivalTimes();
+        return this.enemySources;
+    }
+
+    /**
+     * Gets the number of rounds that a bug at each cell with each heading
+     * needs to reach the target.
+     *
+     * @return The times, index = ArrivalTimes.node(cell, heading), in the
+     *         working memory of the search engine of this thread
+     */
+    int[] getBugTimesTo(Point target) {
+        return this.search().bugTimesTo(this, cell(target));
+    }
+
+    /**
+     * Gets the fewest intersections that a path from the origin passes
+     * through to get to each cell with each last move.
+     *
+     * @return The counts, index = ArrivalTimes.node(cell, move), in the
+     *         working memory of the search engine of this thread
+     */
+    int[] getIntersectionsFrom(Point origin) {
+        return this.search().intersectionsFrom(this, cell(origin));
+    }
+
     public Map<Point, Integer> getPreviousEnemyPositions() {
         Map<Point, Integer> prevEnemyPositions = new HashMap<>();
 
@@ -159,13 +466,75 @@ public class State {
     }
 
     public Set<Point> getSnippetPositions() {
+        if (this.snippetPositions == null && !hasChanged(SNIPPET))
+            this.snippetPositions = this.prevState.snippetPositions;
+
+        if (this.snippetPositions == null)
+            this.snippetPositions = getPositions(SNIPPET);
+
         return this.snippetPositions;
     }
 
     public Set<Point> getWeaponPositions() {
+        if (this.weaponPositions == null && !hasChanged(WEAPON))
+            this.weaponPositions = this.prevState.weaponPositions;
+
+        if (this.weaponPositions == null)
+            this.weaponPositions = getPositions(WEAPON);
+
         return this.weaponPositions;
     }
 
+    private Set<Point> getPositions(int content) {
+        Set<Point> positions = new HashSet<>();
+        for (int cell = 0; cell < this.grid.length; cell++) {
+            if ((this.grid[cell] & content) != 0)
+                positions.add(this.maze.point(cell));
+        }
+        return positions;
+    }
+
+    /**
+     * Returns the number of moves on a shortest path between two points
+     * in the maze. Since the bugs source entrances are considered to be
+     * open, this is a lower bound when they are closed.
+     *
+     * @return The distance, or Maze.UNREACHABLE if there is no path
+     */
+    public int distance(Point a, Point b) {
+        return this.maze.distance(this.maze.cell(a), this.maze.cell(b));
+    }
+
+    /**
+     * Returns the first move on a shortest path between two points in
+     * the maze.
+     *
+     * @return The move, or PASS if the points are the same or there is no path
+     */
+    public Move firstStep(Point a, Point b) {
+        return this.maze.firstStep(this.maze.cell(a), this.maze.cell(b));
+    }
+
+    Maze getMaze() {
+        return this.maze;
+    }
+
+    TrapAnalysis getTrapAnalysis() {
+        return this.maze.trapAnalysis();
+    }
+
+    int cell(Point p) {
+        return this.maze.cell(p);
+    }
+
+    Point point(int cell) {
+        return this.maze.point(cell);
+    }
+
+    int distance(int fromCell, int toCell) {
+        return this.maze.distance(fromCell, toCell);
+    }
+
     /**
      * Return a list of valid moves for my bot, i.e. moves does not bring
      * player outside the field or inside a wall
@@ -174,21 +543,58 @@ public class State {
      * @return A list of valid moves from the given point
      */
     public Set<Move> getValidMoves(Point p) {
-        Set<Move> validMoves = new HashSet<>();
-        int x = p.x;
-        int y = p.y;
+        return getValidMoves(p.x, p.y);
+    }
+
+    Set<Move> getValidMoves(int x, int y) {
+        return VALID_MOVES[validMoveMask(x, y)];
+    }
+
+    /**
+     * Returns the valid moves from a cell in search order, as an array that
+     * is shared and must not be modified.
+     *
+     * @param cell The index of the cell in the grid
+     * @return The same moves as getValidMoves()
+     */
+    Move[] validMoves(int cell) {
+        return VALID_MOVE_ARRAYS[validMoveMask(cell % this.width, cell / this.width)];
+    }
 
-        Point up    = new Point(x, y - 1);
-        Point down  = new Point(x, y + 1);
-        Point left  = new Point(x - 1, y);
-        Point right = new Point(x + 1, y);
+    private int validMoveMask(int x, int y) {
+        int mask = 0;
+        for (int i = 0; i < SEARCH_ORDER.length; i++) {
+            Move move = SEARCH_ORDER[i];
+            if (isCellValid(x + move.dx, y + move.dy))
+                mask |= 1 << i;
+        }
+        return mask;
+    }
 
-        if (isPointValid(up))    validMoves.add(Move.UP);
-        if (isPointValid(down))  validMoves.add(Move.DOWN);
-        if (isPointValid(left))  validMoves.add(Move.LEFT);
-        if (isPointValid(right)) validMoves.add(Move.RIGHT);
+    /**
+     * Returns whether a position has more than two valid moves, i.e. there
+     * is more than one way to go on from it.
+     *
+     * @param p The position to test
+     * @return True if the position is an intersection
+     */
+    boolean isIntersection(Point p) {
+        return isIntersection(this.maze.cell(p));
+    }
 
-        return validMoves;
+    /**
+     * Looks the cell up in the junction graph of the maze, unless whether
+     * it is an intersection depends on the bugs source entrances.
+     *
+     * @param cell The index of the cell in the grid
+     * @return True if the cell is an intersection
+     */
+    boolean isIntersection(int cell) {
+        JunctionGraph junctions = this.maze.junctions();
+        if (!junctions.isUnstable(cell))
+            return junctions.isIntersection(cell);
+
+        return getValidMoves(cell % this.width, cell / this.width).size() > 2;
     }
 
     /**
@@ -198,84 +604,94 @@ public class State {
      * @return True if point is valid to stand on, false otherwise
      */
     public boolean isPointValid(Point p) {
-        // Special handling for the bugs source (which is marked as a wall)
-        if (BUG_ENTRANCE_1.contains(p)) {
-            return this.enemyPositions.keySet().stream()
-                    .anyMatch(e -> BUG_ENTRANCE_1.contains(e));
-        }
-        else if (BUG_ENTRANCE_2.contains(p)) {
-            return this.enemyPositions.keySet().stream()
-                    .anyMatch(e -> BUG_ENTRANCE_2.contains(e));
-        }
+        return isCellValid(p.x, p.y);
+    }
 
-        int x = p.x;
-        int y = p.y;
+    private boolean isCellValid(int x, int y) {
+        // Special handling for the bugs source (which is marked as a wall)
+        int entrance = entranceOf(x, y);
+        if (entrance >= 0)
+            return this.openEntrances[entrance];
 
         return x >= 0 && x < this.width && y >= 0 && y < this.height &&
-                !this.field[x][y].contains("x");
-    }
-
-    List<Path> findPaths(Point origin, Set<Point> targets, Map<Point, Integer> threats, int threatsAllowed, Predicate<Path> searchWhile) {
-        // Parameter defaults
-        if (targets == null)
-            targets = new HashSet<>();
-        if (threats == null)
-            threats = new HashMap<>();
-        if (searchWhile == null)
-            searchWhile = (path -> path.nrMoves() < this.height + this.width);
-
-        List<Path> paths = new ArrayList<>();
-
-        Deque<Pair<Path, Integer>> stack = new ArrayDeque<>();
-        Path start = new Path(origin);
-        stack.addFirst(new Pair<>(start, 0));
-
-        while (stack.peekFirst() != null) {
-            Pair<Path, Integer> pair = stack.removeFirst();
-            Path currPath = pair.getKey();
-            Point currPos = currPath.end();
-            int currNrThreats = pair.getValue();
-
-            Set<Move> validMoves = this.getValidMoves(currPos);
-            for (Move nextMove : validMoves) {
-                Point nextPos = new Point(currPos, nextMove);
-                if (currPath.contains(nextPos))
-                    continue;
-
-                int nrThreats = threats.getOrDefault(nextPos, 0);
-                int nextNrThreats = currNrThreats + nrThreats;
-                if (nextNrThreats > threatsAllowed)
-                    continue;
-
-                Path nextPath = new Path(currPath, nextPos, nextMove, nrThreats, this);
-
-                if (!searchWhile.test(nextPath)) {
-                    if (targets.isEmpty())
-                        paths.add(currPath);
-                    break;
-                }
+                (this.grid[x + y * this.width] & WALL) == 0;
+    }
 
-                if (targets.contains(nextPos)) {
-                    paths.add(nextPath);
-                }
+    /**
+     * @return The executor that the analyses of the players can run on,
+     *         or null if they run one after the other
+     */
+    ExecutorService getExecutor() {
+        return this.executor;
+    }
 
-                stack.addFirst(new Pair<>(nextPath, nextNrThreats));
-            }
-        }
+    /**
+     * Detaches a state that is not part of the match, such as a predicted
+     * one, from the executor and the metrics of the match. Its analyses
+     * then run one after the other, on the thread that asks for them, and
+     * can never hold up or be counted in the analyses of a real turn.
+     */
+    void detach() {
+        this.executor = null;
+        this.metrics = new Metrics();
+    }
 
-        // Order the paths by increasing length
-        paths.sort(Comparator.comparing(Path::nrMoves).thenComparing(Path::nrThreats));
+    /**
+     * Tells the analyses of this state to stop at their next check, as if
+     * their deadline had passed. Used for states that are no longer needed,
+     * such as predictions that turned out wrong.
+     */
+    void expire() {
+        this.isExpired = true;
+    }
 
-        // Filter out the paths that are too round-about
-        Map<Point, Integer> minDistancePerTarget = new HashMap<>();
-        paths.forEach(path ->
-            minDistancePerTarget.putIfAbsent(path.end(), path.nrMoves())
-        );
-        paths.removeIf(path ->
-                path.nrMoves() / 2 > minDistancePerTarget.get(path.end())
-        );
+    boolean isExpired() {
+        return this.isExpired;
+    }
 
-        return paths;
+    /**
+     * Works out the positions that are otherwise found on first use, so
+     * that threads can share this state without synchronising. The
+     * threads must be started after this.
+     */
+    void prepareForSharing() {
+        if (this.prevState != null)
+            this.prevState.prepareForSharing();
+
+        this.getEnemyPositions();
+        this.getSnippetPositions();
+        this.getWeaponPositions();
+        this.getEnemyArrivalTimes();
+    }
+
+    private Search search() {
+        return this.game.getSearch(this.maze);
+    }
+
+    Metrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Takes over the searches done on a state that was predicted for this
+     * turn, if it turned out to be right.
+     *
+     * @param predicted The predicted state
+     * @return True if the predicted state equals this one
+     */
+    boolean reuseSearches(State predicted) {
+        if (!this.equals(predicted) || predicted.maze != this.maze)
+            return false;
+
+        this.searchCache = predicted.searchCache;
+        return true;
+    }
+
+    /**
+     * @return The cache of the searches done on this state
+     */
+    SearchCache getSearchCache() {
+        return this.searchCache;
     }
 
     /**
@@ -290,61 +706,9 @@ public class State {
      * @param searchWhile A predicate that defines the condition for when the search can continue
      * @return A list of Paths to each of the targets. The list is in increasing order of distance.
      */
-    public List<Path> findShortestPaths(Point origin, Set<Point> targets, Map<Point, Integer> avoid, int threatsAllowed, Predicate<Path> searchWhile) {
-        // Parameter defaults
-        if (targets == null)
-            targets = new HashSet<>();
-        if (avoid == null)
-            avoid = new HashMap<>();
-        if (searchWhile == null)
-            searchWhile = (p -> true);
-
-        List<Path> paths          = new ArrayList<>();
-        Queue<Path> queue         = new LinkedList<>();
-        Queue<Integer> encounters = new LinkedList<>();
-        Set<Point> visited        = new HashSet<>();
-
-        queue.add(new Path(origin));
-        encounters.add(0); // keep a count of encounters in parallel with items in queue
-        visited.add(origin);
-
-        // Do a breadth-first search
-        search:
-        while (!queue.isEmpty()) {
-            Path path = queue.remove();
-            int unavoided = encounters.remove();
-            Set<Move> validMoves = this.getValidMoves(path.end());
-
-            for (Move nextMove : validMoves) {
-                Point nextPosition = new Point(path.end(), nextMove);
-                int nrThreats = avoid.getOrDefault(nextPosition, 0);
-                Path nextPath = new Path(path, nextPosition, nextMove, nrThreats, this);
-
-                if (!searchWhile.test(nextPath)) {
-                    paths.add(path);
-                    continue search;
-                }
-
-                if (visited.contains(nextPosition))
-                    continue;
-
-                int newUnavoided = unavoided;
-                if (avoid.containsKey(nextPosition)) {
-                    if (newUnavoided + avoid.get(nextPosition) <= threatsAllowed)
-                        newUnavoided += avoid.get(nextPosition);
-                    else
-                        continue; // We've reached a position to avoid - Don't add this path
-                }
-
-                if (targets.contains(nextPosition))
-                    paths.add(nextPath);
-
-                visited.add(nextPosition);
-                queue.add(nextPath);
-                encounters.add(newUnavoided);
-            }
-        }
-        return paths;
+    public List<Path> findShortestPaths(Point origin, Set<Point> targets, Map<Point, Integer> avoid, int threatsAllowed, Predicate<PathSummary> searchWhile) {
+        return this.searchCache.get(SearchCache.Kind.SHORTEST, origin, targets, avoid, threatsAllowed, searchWhile,
+                () -> this.count(search -> search.findShortestPaths(this, origin, targets, avoid, threatsAllowed, searchWhile)));
     }
 
     /**
@@ -360,42 +724,44 @@ public class State {
      * @return A list of Paths to the targets. Each target may have multiple paths. The list is in increasing order of distance.
      */
 
-    List<Path> findShortestPathsPerDirection(Point origin, Set<Point> targets, Map<Point, Integer> avoid, int threatsAllowed, Predicate<Path> searchWhile) {
-        // Parameter defaults
-        if (targets == null)
-            targets = new HashSet<>();
-        if (avoid == null)
-            avoid = new HashMap<>();
-        if (searchWhile == null)
-            searchWhile = (p -> true);
-
-        List<Path> allPaths = new ArrayList<>();
-
-        Set<Point> nextPositions = this.getValidMoves(origin).stream()
-                .map(move -> new Point(origin, move))
-                .collect(Collectors.toSet());
-
-        for (Point pos : nextPositions) {
-            Map<Point, Integer> avoid1 = new HashMap<>(avoid);
-
-            // Avoid all other directions so we can consider the paths to each target if we move this way
-            for (Point wantToAvoid : nextPositions) {
-                if (wantToAvoid.equals(pos))
-                    continue;
-
-                if (avoid1.containsKey(wantToAvoid))
-                    avoid1.compute(wantToAvoid, (k, v) -> v + 999);
-                else
-                    avoid1.put(wantToAvoid, 999);
-            }
+    List<Path> findShortestPathsPerDirection(Point origin, Set<Point> targets, Map<Point, Integer> avoid, int threatsAllowed, Predicate<PathSummary> searchWhile) {
+        return this.searchCache.get(SearchCache.Kind.PER_DIRECTION, origin, targets, avoid, threatsAllowed, searchWhile,
+                () -> this.count(search -> search.findShortestPathsPerDirection(this, origin, targets, avoid, threatsAllowed, searchWhile)));
+    }
 
-            List<Path> paths = this.findShortestPaths(origin, targets, avoid1, threatsAllowed, searchWhile);
-            allPaths.addAll(paths);
-        }
+    /**
+     * Does a breadth-first search on the search engine of this thread, and
+     * counts its effort in the metrics.
+     */
+    private List<Path> count(Function<Search, List<Path>> search) {
+        Search engine = this.search();
+        List<Path> paths = search.apply(engine);
+        this.metrics.countSearch(engine.getNrExpanded(), paths.size());
+        return paths;
+    }
 
-        allPaths.sort(Comparator.comparing(Path::nrMoves).thenComparing(Path::nrThreats));
+    /**
+     * @return The Zobrist hash of this state, folded into an int
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.hash);
+    }
 
-        return allPaths;
+    /**
+     * States are equal if they have the same field and the players have
+     * the same flags, whatever came before them.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof State))
+            return false;
+
+        State other = (State) o;
+        return this.hash == other.hash && this.width == other.width &&
+                this.playerFlags == other.playerFlags && Arrays.equals(this.grid, other.grid);
     }
 
     /**
@@ -426,7 +792,8 @@ public class State {
             output.append(String.format("%2d |", y)); // y-axis labels & left border
 
             for (int x = 0; x < this.width; x++) {
-                output.append(" " + this.field[x][y]);
+                output.append(" ");
+                appendCell(output, x, y);
             }
             output.append(" |\n"); // right border
         }
@@ -439,4 +806,63 @@ public class State {
 
         return output.toString();
     }
+
+    byte[] copyGrid() {
+        return this.grid.clone();
+    }
+
+    /**
+     * Writes a grid in the format in which the engine sends the field.
+     *
+     * @param grid The contents of each cell, as in this.grid
+     * @return The field
+     */
+    static String toField(byte[] grid) {
+        StringBuilder field = new StringBuilder();
+        for (int cell = 0; cell < grid.length; cell++) {
+            if (cell > 0)
+                field.append(',');
+
+            int content = grid[cell];
+            int length = field.length();
+            if ((content & WALL) != 0)
+                field.append('x');
+            if ((content & PLAYER_0) != 0)
+                field.append('0');
+            if ((content & PLAYER_1) != 0)
+                field.append('1');
+            for (int i = 0; i < (content & ENEMY_MASK) >> ENEMY_SHIFT; i++)
+                field.append('E');
+            if ((content & SNIPPET) != 0)
+                field.append('C');
+            if ((content & WEAPON) != 0)
+                field.append('W');
+
+            if (field.length() == length)
+                field.append('.');
+        }
+        return field.toString();
+    }
+
+    private void appendCell(StringBuilder output, int x, int y) {
+        int cell = this.grid[x + y * this.width];
+        int nrEnemies = (cell & ENEMY_MASK) >> ENEMY_SHIFT;
+        int length = output.length();
+
+        if ((cell & WALL) != 0 && !(nrEnemies > 0 && entranceOf(x, y) >= 0))
+            output.append('x');
+        if ((cell & PLAYER_0) != 0)
+            output.append('0');
+        if ((cell & PLAYER_1) != 0)
+            output.append('1');
+        for (int i = 0; i < nrEnemies; i++)
+            output.append('E');
+        if ((cell & SNIPPET) != 0)
+            output.append('C');
+        if ((cell & WEAPON) != 0)
+            output.append('W');
+
+        if (output.length() == length)
+            output.append('.');
+    }
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * hackman.TrapAnalysis
+ *
+ * Finds the parts of the maze that a single cell can seal off. These are
+ * the articulation points (cells whose removal disconnects the maze) and
+ * the biconnected components between them. The largest component is the
+ * core of the maze; every other component is part of a pocket, and the
+ * articulation points on the way from it to the core are its doors.
+ *
+ * If a threat can reach a door before a player gets through it, then the
+ * player can be shut in the pocket behind it.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+class TrapAnalysis {
+
+    private static final int[] NO_DOORS = new int[0];
+
+    private final Maze maze;
+    private final int nrCells;
+    private final boolean[] isArticulation;
+    private final int[] component;  // cell : the component nearest to the core
+    private final int[][] doors;    // cell : articulation points towards the core
+    private int nrComponents = 0;
+
+    // Working state of the depth-first search
+    private int[] order;
+    private int[] low;
+    private int counter = 0;
+    private final Deque<int[]> edges = new ArrayDeque<>();
+    private final List<int[]> components = new ArrayList<>();
+
+    TrapAnalysis(Maze maze) {
+        this.maze           = maze;
+        this.nrCells        = maze.getWidth() * maze.getHeight();
+        this.isArticulation = new boolean[this.nrCells];
+        this.component      = new int[this.nrCells];
+        this.doors          = new int[this.nrCells][];
+
+        this.order = new int[this.nrCells];
+        this.low   = new int[this.nrCells];
+        Arrays.fill(this.order, -1);
+        Arrays.fill(this.component, -1);
+
+        for (int cell = 0; cell < this.nrCells; cell++) {
+            if (maze.isOpen(cell) && this.order[cell] < 0)
+                this.findComponents(cell, -1);
+        }
+        this.nrComponents = this.components.size();
+        this.findDoors();
+
+        this.order = null;
+        this.low   = null;
+        this.components.clear();
+    }
+
+    /**
+     * Tarjan's depth-first search for articulation points. The edges are
+     * kept on a stack, and each time a cell turns out to separate the
+     * cells below it from the rest, the edges above it form a component.
+     */
+    private void findComponents(int cell, int parent) {
+        this.order[cell] = this.low[cell] = this.counter++;
+        int nrChildren = 0;
+
+        for (Move move : State.searchOrder()) {
+            int next = this.maze.neighbour(cell, move);
+            if (next < 0 || next == parent)
+                continue;
+
+            if (this.order[next] < 0) {
+                this.edges.push(new int[] {cell, next});
+                nrChildren++;
+                this.findComponents(next, cell);
+                this.low[cell] = Math.min(this.low[cell], this.low[next]);
+
+                if (this.low[next] >= this.order[cell]) {
+                    if (parent >= 0)
+                        this.isArticulation[cell] = true;
+                    this.popComponent(cell, next);
+                }
+            }
+            else if (this.order[next] < this.order[cell]) {
+                this.edges.push(new int[] {cell, next});
+                this.low[cell] = Math.min(this.low[cell], this.order[next]);
+            }
+        }
+
+        if (parent < 0 && nrChildren > 1)
+            this.isArticulation[cell] = true;
+    }
+
+    private void popComponent(int cell, int next) {
+        boolean[] inComponent = new boolean[this.nrCells];
+        int[] edge;
+        do {
+            edge = this.edges.pop();
+            inComponent[edge[0]] = true;
+            inComponent[edge[1]] = true;
+        } while (edge[0] != cell || edge[1] != next);
+
+        int size = 0;
+        for (boolean b : inComponent)
+            size += b ? 1 : 0;
+
+        int[] cells = new int[size];
+        int i = 0;
+        for (int c = 0; c < this.nrCells; c++) {
+            if (inComponent[c])
+                cells[i++] = c;
+        }
+        this.components.add(cells);
+    }
+
+    /**
+     * Walks the tree of components and articulation points outwards from
+     * the largest component, to find the doors of each cell.
+     */
+    private void findDoors() {
+        Arrays.fill(this.doors, NO_DOORS);
+        if (this.components.isEmpty())
+            return;
+
+        int core = 0;
+        for (int i = 1; i < this.components.size(); i++) {
+            if (this.components.get(i).length > this.components.get(core).length)
+                core = i;
+        }
+
+        boolean[] visited = new boolean[this.components.size()];
+        Deque<Integer> queue = new ArrayDeque<>();
+        visited[core] = true;
+        queue.add(core);
+        for (int cell : this.components.get(core)) {
+            this.component[cell] = core;
+            this.doors[cell] = NO_DOORS;
+        }
+
+        while (!queue.isEmpty()) {
+            int current = queue.removeFirst();
+            for (int door : this.components.get(current)) {
+                if (!this.isArticulation[door])
+                    continue;
+
+                // The components on the other side of the door
+                for (int i = 0; i < this.components.size(); i++) {
+                    if (visited[i] || !contains(this.components.get(i), door))
+                        continue;
+
+                    visited[i] = true;
+                    queue.add(i);
+
+                    int[] doors = Arrays.copyOf(this.doors[door], this.doors[door].length + 1);
+                    doors[doors.length - 1] = door;
+                    for (int cell : this.components.get(i)) {
+                        if (cell != door && this.component[cell] < 0) {
+                            this.component[cell] = i;
+                            this.doors[cell] = doors;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean contains(int[] cells, int cell) {
+        return Arrays.binarySearch(cells, cell) >= 0;
+    }
+
+    boolean isArticulation(int cell) {
+        return this.isArticulation[cell];
+    }
+
+    /**
+     * @return The component that the cell belongs to (the one nearest to the
+     *         core for an articulation point), or -1 for a wall
+     */
+    int component(int cell) {
+        return this.component[cell];
+    }
+
+    int nrComponents() {
+        return this.nrComponents;
+    }
+
+    /**
+     * @return The articulation points that lead from the cell to the core,
+     *         nearest to the core first
+     */
+    int[] doors(int cell) {
+        return this.doors[cell];
+    }
+
+    /**
+     * Finds the cells that a player at the given origin could be shut in
+     * if it went there, because a threat can get to one of their doors
+     * before the player can get back out through it.
+     *
+     * @param origin       The cell of the player
+     * @param arrivalTimes The earliest round in which a threat can reach each cell
+     * @return For each cell, whether it can be sealed off
+     */
+    boolean[] findSealable(int origin, int[] arrivalTimes) {
+        boolean[] sealable = new boolean[this.nrCells];
+        for (int cell = 0; cell < this.nrCells; cell++) {
+            int toCell = this.maze.distance(origin, cell);
+            if (toCell == Maze.UNREACHABLE)
+                continue;
+
+            for (int door : this.doors[cell]) {
+                if (arrivalTimes[door] <= toCell + this.maze.distance(cell, door)) {
+                    sealable[cell] = true;
+                    break;
+                }
+            }
+        }
+        return sealable;
+    }
+}
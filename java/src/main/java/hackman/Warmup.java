@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * hackman.Warmup
+ *
+ * Gets the JIT compiler going before the first move. The first calls of
+ * doMove() run in the interpreter and are many times slower than later
+ * ones, so while the settings come in, made-up states of the announced
+ * size are analysed in the background until the time cap is reached or
+ * the first move is asked for, whichever comes first.
+ *
+ * The states belong to a game of their own, so that nothing of the match
+ * (its maze, history, metrics or executor) is touched. Their analyses run
+ * on the warm-up thread only.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+class Warmup {
+
+    private static final int MAX_ENEMIES = 8;
+    private static final int MAX_SNIPPETS = 6;
+
+    private final Game game;
+    private final int width;
+    private final int height;
+    private final Random random;
+    private final ExecutorService executor;
+    private volatile boolean isStopped = false;
+    private volatile State current = null;
+
+    Warmup(int width, int height, int myId) {
+        this.game   = new Game(width, height, myId);
+        this.game.setConcurrent(false);
+        this.width  = width;
+        this.height = height;
+        this.random = new Random(31 * width + height);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts warming up in the background.
+     *
+     * @param millis The most time to spend
+     */
+    void start(int millis) {
+        long start = System.nanoTime();
+        long deadline = start + millis * 1000000L;
+        this.executor.submit(() -> {
+            int nrCycles = this.run(deadline);
+            if (Metrics.ENABLED)
+                System.err.println(String.format("warmup: %d cycles in %.2fms", nrCycles, (System.nanoTime() - start) / 1e6));
+        });
+    }
+
+    /**
+     * Stops warming up. The state of the cycle that is under way is
+     * expired, so its analysis gives up at its next check instead of
+     * running on into the first move.
+     */
+    void stop() {
+        this.isStopped = true;
+        State state = this.current;
+        if (state != null)
+            state.expire();
+        this.executor.shutdown();
+    }
+
+    /**
+     * Analyses made-up states until the deadline or until stopped. Each
+     * state follows on from the one before it, as in a match.
+     *
+     * @param deadline The System.nanoTime() to stop at
+     * @return The number of states that were analysed
+     */
+    int run(long deadline) {
+        int nrCycles = 0;
+        State prevState = null;
+        while (!this.isStopped && System.nanoTime() < deadline) {
+            List<Player> players = Arrays.asList(
+                    new Player(0, this.random.nextInt(10), this.random.nextBoolean(), false),
+                    new Player(1, this.random.nextInt(10), this.random.nextBoolean(), false));
+
+            State state = new State(this.field(), players, prevState, this.game);
+            this.current = state;
+            if (this.isStopped) // stopped before this state could be expired
+                break;
+            state.getMyPlayer().doMove(deadline);
+            if (prevState != null)
+                prevState.forgetPreviousState();
+
+            prevState = state;
+            nrCycles++;
+        }
+        this.current = null;
+        return nrCycles;
+    }
+
+    /**
+     * Makes up a field of the size of the match. The layout is the same
+     * every time: a wall on every other cell of every other row, which
+     * leaves all the open cells connected. The players, bugs, snippets and
+     * weapon are put on random open cells.
+     *
+     * @return The field in the format of the engine
+     */
+    String field() {
+        String[] cells = new String[this.width * this.height];
+        List<Integer> open = new ArrayList<>();
+        for (int cell = 0; cell < cells.length; cell++) {
+            boolean isWall = (cell % this.width) % 2 == 1 && (cell / this.width) % 2 == 1;
+            cells[cell] = isWall ? "x" : ".";
+            if (!isWall)
+                open.add(cell);
+        }
+
+        Collections.shuffle(open, this.random);
+        int i = 0;
+        cells[open.get(i++)] = "0";
+        cells[open.get(i++)] = "1";
+        if (this.random.nextBoolean())
+            cells[open.get(i++)] = "W";
+
+        int nrSnippets = 1 + this.random.nextInt(MAX_SNIPPETS);
+        for (int s = 0; s < nrSnippets && i < open.size(); s++)
+            cells[open.get(i++)] = "C";
+
+        int nrEnemies = this.random.nextInt(MAX_ENEMIES + 1);
+        for (int e = 0; e < nrEnemies && i < open.size(); e++)
+            cells[open.get(i++)] = "E";
+
+        return String.join(",", cells);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Steven Lee (stevenwh.lee@gmail.com)
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ *     For the full copyright and license information, please view the LICENSE
+ *     file that was distributed with this source code.
+ */
+
+package hackman;
+
+import java.util.SplittableRandom;
+
+/**
+ * hackman.Zobrist
+ *
+ * Random 64-bit keys for everything that can be in a cell of the field,
+ * and for the flags of the players. The hash of a state is the xor of the
+ * keys of what it contains, so a change (a player or a bug moving, an item
+ * being picked up) is applied by xor-ing the keys of the old and the new
+ * content, without going over the field again.
+ *
+ * The walls never change during a match, so they have no keys. Enemies
+ * have a key per count, since more than one can be in a cell.
+ *
+ * @author Steven Lee - stevenwh.lee@gmail.com
+ */
+class Zobrist {
+
+    private static final long SEED = 0x2B992DDFA23249D6L;
+
+    // Keys per cell
+    private static final int SNIPPET  = 0;
+    private static final int WEAPON   = 1;
+    private static final int PLAYER_0 = 2;
+    private static final int PLAYER_1 = 3;
+    private static final int ENEMIES  = 4; // followed by one per count
+    private static final int NR_KEYS  = ENEMIES + State.MAX_ENEMIES;
+
+    private final long[] cellKeys;  // cell * NR_KEYS + key
+    private final long[] armedKeys;
+    private final long[] paralysedKeys;
+
+    Zobrist(int nrCells) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        this.cellKeys      = random.longs(nrCells * NR_KEYS).toArray();
+        this.armedKeys     = random.longs(2).toArray();
+        this.paralysedKeys = random.longs(2).toArray();
+    }
+
+    /**
+     * @param cell    The index of the cell
+     * @param content The content bits of the cell, as in the grid of a State
+     * @return The xor of the keys of everything in the cell
+     */
+    long content(int cell, int content) {
+        long hash = 0;
+        if ((content & State.SNIPPET) != 0)
+            hash ^= this.snippet(cell);
+        if ((content & State.WEAPON) != 0)
+            hash ^= this.weapon(cell);
+        if ((content & State.PLAYER_0) != 0)
+            hash ^= this.player(0, cell);
+        if ((content & State.PLAYER_1) != 0)
+            hash ^= this.player(1, cell);
+
+        return hash ^ this.enemies(cell, (content & State.ENEMY_MASK) >> State.ENEMY_SHIFT);
+    }
+
+    long snippet(int cell) {
+        return this.cellKeys[cell * NR_KEYS + SNIPPET];
+    }
+
+    long weapon(int cell) {
+        return this.cellKeys[cell * NR_KEYS + WEAPON];
+    }
+
+    long player(int id, int cell) {
+        return this.cellKeys[cell * NR_KEYS + (id == 0 ? PLAYER_0 : PLAYER_1)];
+    }
+
+    /**
+     * @return The key of the given number of enemies in the cell, which is
+     *         0 for none
+     */
+    long enemies(int cell, int count) {
+        if (count <= 0)
+            return 0;
+
+        return this.cellKeys[cell * NR_KEYS + ENEMIES + Math.min(count, State.MAX_ENEMIES) - 1];
+    }
+
+    /**
+     * @return The change in the hash when an enemy moves from one cell to
+     *         another, given the counts in both cells before the move
+     */
+    long moveEnemy(int from, int fromCount, int to, int toCount) {
+        return this.enemies(from, fromCount) ^ this.enemies(from, fromCount - 1) ^
+                this.enemies(to, toCount) ^ this.enemies(to, toCount + 1);
+    }
+
+    long armed(int id) {
+        return this.armedKeys[id];
+    }
+
+    long paralysed(int id) {
+        return this.paralysedKeys[id];
+    }
+}
@@ -4,8 +4,13 @@ import org.junit.Test;
 
 import java.util.*;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class BotTest {
 
@@ -355,6 +360,301 @@ public class BotTest {
         assertEquals(Move.RIGHT, myPlayer.doMove());
     }
 
+    @Test
+    public void safeMoveWhenOutOfTime() {
+        // With no time left, at least don't walk into the bug
+        String field = ".,.,.,.,.,W,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,1,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,E,.,0,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,.,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,.,x,.,.,.,x,x,x,x,x,x,.,.,.,x,.,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,C,.,.,.,.,C,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,.";
+        State  state = new State(field, this.players, null, this.game);
+        assertNotEquals(Move.LEFT, myPlayer.doMove(System.nanoTime()));
+        assertEquals(Move.RIGHT, myPlayer.doMove(Player.NO_DEADLINE));
+    }
+
+    @Test
+    public void tiedPathsInSearchOrder() {
+        // Both ways round the block take 11 moves, so the one with the earlier moves comes first
+        String field = ".,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,.,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,0,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,.";
+        State  state = new State(field, this.players, null, this.game);
+        List<Path> paths = state.findShortestPathsPerDirection(myPlayer.getPosition(), Collections.singleton(new Point(4, 6)), null, 0, null);
+        assertEquals(2, paths.size());
+        assertEquals(Move.DOWN, paths.get(0).move(0));
+        assertEquals(Move.UP, paths.get(1).move(0));
+        assertTrue(Path.compareMoves(paths.get(0), paths.get(1)) < 0);
+        assertEquals(0, Path.compareMoves(paths.get(1), paths.get(1)));
+    }
+
+    @Test
+    public void distancesInMaze() {
+        String field = "C,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,.,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,0,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,C";
+        State  state = new State(field, this.players, null, this.game);
+
+        Point corner = new Point(0, 0);
+        assertEquals(0, state.distance(corner, corner));
+        assertEquals(19, state.distance(corner, new Point(19, 0)));
+        assertEquals(Move.RIGHT, state.firstStep(corner, new Point(19, 0)));
+        assertEquals(state.distance(myPlayer.getPosition(), oppPlayer.getPosition()),
+                state.distance(oppPlayer.getPosition(), myPlayer.getPosition()));
+        assertEquals(Move.PASS, state.firstStep(corner, corner));
+    }
+
+    @Test
+    public void intersectionsInMaze() {
+        // The second field has the bugs source entrances open
+        String[] fields = {
+            "C,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,.,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,0,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,C",
+            "C,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,.,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,0,x,.,.,.,x,x,xE,x,xE,x,.,.,.,x,1,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,C"
+        };
+
+        for (String field : fields) {
+            State state = new State(field, this.players, null, this.game);
+            for (int y = 0; y < this.game.getFieldHeight(); y++) {
+                for (int x = 0; x < this.game.getFieldWidth(); x++) {
+                    Point p = new Point(x, y);
+                    if (state.isPointValid(p))
+                        assertEquals(p.toString(), state.getValidMoves(p).size() > 2, state.isIntersection(p));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void changesSincePreviousState() {
+        String field = "C,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,.,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,0,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,C";
+        State  prevState = new State(field, this.players, null, this.game);
+        assertEquals(null, prevState.getChangedCells());
+
+        // My player moved, nothing else did
+        field = "C,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,.,.,0,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,.,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,C";
+        State  state = new State(field, this.players, prevState, this.game);
+        assertEquals(2, state.getChangedCells().length);
+        assert(state.hasChanged(State.PLAYER_0));
+        assert(!state.hasChanged(State.SNIPPET | State.WEAPON | State.ENEMY_MASK));
+        assertSame(prevState.getSnippetPositions(), state.getSnippetPositions());
+    }
+
+    @Test
+    public void searchesAreCached() {
+        String field = "C,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,E,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,0,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,E,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,C";
+        State  state = new State(field, this.players, null, this.game);
+        Move move = myPlayer.doMove();
+        int nrHits = state.getSearchCache().getNrHits();
+        int nrMisses = state.getSearchCache().getNrMisses();
+
+        // Asking again gives the same answer without searching again
+        assertEquals(move, myPlayer.doMove());
+        assertEquals(nrMisses, state.getSearchCache().getNrMisses());
+        assert(state.getSearchCache().getNrHits() > nrHits);
+    }
+
+    @Test
+    public void enemyArrivalTimes() {
+        String field = ".,.,.,.,.,W,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,1,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,E,.,0,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,.,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,.,x,.,.,.,x,x,x,x,x,x,.,.,.,x,.,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,C,.,.,.,.,C,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,.";
+        State  prevState = new State(field, this.players, null, this.game);
+        int[] arrivalTimes = prevState.getEnemyArrivalTimes();
+        assertEquals(0, arrivalTimes[81]);
+        assertEquals(1, arrivalTimes[80]);
+
+        // The bug has moved to the right, so it can't go back to the left
+        field = ".,.,.,.,.,W,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,1,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,E,0,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,.,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,.,x,.,.,.,x,x,x,x,x,x,.,.,.,x,.,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,C,.,.,.,.,C,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,.";
+        State  state = new State(field, this.players, prevState, this.game);
+        arrivalTimes = state.getEnemyArrivalTimes();
+        assertEquals(0, arrivalTimes[82]);
+        assertEquals(1, arrivalTimes[83]);
+        assert(arrivalTimes[81] > 1);
+    }
+
+    @Test
+    public void sealedInPocket() {
+        // The top left corner is a dead end, and a bug is next to its way out
+        String field = "C,.,.,x,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,E,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,.,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,0,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,C";
+        State  state = new State(field, this.players, null, this.game);
+        TrapAnalysis trapAnalysis = state.getTrapAnalysis();
+        assert(trapAnalysis.isArticulation(state.cell(new Point(0, 2))));
+        assert(!trapAnalysis.isArticulation(state.cell(new Point(2, 0))));
+        assertEquals(6, trapAnalysis.doors(state.cell(new Point(2, 0))).length);
+        assertEquals(state.cell(new Point(0, 4)), trapAnalysis.doors(state.cell(new Point(2, 0)))[0]);
+
+        assert(myPlayer.canBeSealedIn(new Point(2, 0)));
+        assert(!myPlayer.canBeSealedIn(new Point(10, 9)));
+    }
+
+    @Test
+    public void rolloutsRateEachMove() {
+        String field = ".,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,E,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,0,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,E,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,.";
+        State  state = new State(field, this.players, null, this.game);
+        Rollouts rollouts = new Rollouts(8, 200);
+        Map<Move, Double> deltas = rollouts.evaluate(state, 1, System.nanoTime() + 100000000L);
+
+        Set<Move> moves = new HashSet<>(state.getValidMoves(myPlayer.getPosition()));
+        moves.add(Move.PASS);
+        assertEquals(moves, deltas.keySet());
+    }
+
+    @Test
+    public void expectimaxLooksAhead() {
+        String field = ".,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,E,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,0,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,E,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,C";
+        State  state = new State(field, this.players, null, this.game);
+        Expectimax expectimax = new Expectimax(state.getMaze(), 200);
+        Expectimax.Result result = expectimax.search(state, 1, Move.DOWN, System.nanoTime() + 100000000L, Expectimax.MAX_DEPTH);
+
+        assert(result.depth >= 1);
+        assert(result.move == Move.PASS || state.getValidMoves(myPlayer.getPosition()).contains(result.move));
+    }
+
+    @Test
+    public void zobristHash() {
+        String field = ".,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,E,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,0,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,C,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,E,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,.";
+        State  state = new State(field, this.players, null, this.game);
+        long hash = state.hashAfterMove(0, Move.DOWN);
+        assertNotEquals(state.getHash(), hash);
+
+        // The player moves down onto the snippet, and is hashed incrementally
+        String next = ".,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,E,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,.,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,0,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,E,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,.";
+        State incremental = new State(next, this.players, state, this.game);
+        State full = new State(next, this.players, null, this.game);
+        assertEquals(hash, incremental.getHash());
+        assertEquals(hash, full.getHash());
+        assertEquals(full, incremental);
+        assertNotEquals(state, full);
+    }
+
+    @Test
+    public void concurrentAnalysis() {
+        // The opponent's analysis on another thread gives the same move
+        String field = ".,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,1,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,.,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,.,x,.,.,.,x,x,x,x,x,x,.,.,.,x,.,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,E,.,.,x,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,E,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,0,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,.";
+        Game concurrentGame = new Game(20, 14, 0);
+        concurrentGame.setConcurrent(true);
+
+        for (int weapons = 0; weapons < 4; weapons++) {
+            this.myPlayer.setWeapon((weapons & 1) != 0);
+            this.oppPlayer.setWeapon((weapons & 2) != 0);
+
+            new State(field, this.players, null, this.game);
+            Move move = myPlayer.doMove();
+            new State(field, this.players, null, concurrentGame);
+            assertEquals(move, myPlayer.doMove());
+        }
+        this.myPlayer.setWeapon(false);
+        this.oppPlayer.setWeapon(false);
+    }
+
+    @Test
+    public void firstMeetingPoint() {
+        String field = ".,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,E,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,0,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,C,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,E,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,.";
+        State  state = new State(field, this.players, null, this.game);
+        Set<Point> targets = state.getSnippetPositions();
+        Path myPath  = state.findShortestPaths(myPlayer.getPosition(), targets, null, 0, null).get(0);
+        Path oppPath = state.findShortestPaths(oppPlayer.getPosition(), targets, null, 0, null).get(0);
+
+        List<Point> intersectingPoints = myPath.getIntersectingPoints(oppPath);
+        assertEquals(intersectingPoints.get(0), myPath.getFirstIntersectingPoint(oppPath));
+        assertEquals(oppPath.nrMoves(), oppPath.getMoveNr(myPath.end()));
+        assertEquals(null, myPath.getFirstIntersectingPoint(new Path(oppPlayer.getPosition())));
+    }
+
+    @Test
+    public void ponderNextState() {
+        // No bugs, so the next state only depends on the opponent's move
+        String field = ".,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,.,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,0,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,C,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,.";
+        State  state = new State(field, this.players, null, this.game);
+        Ponderer ponderer = new Ponderer(this.game);
+        ponderer.start(state, Move.DOWN);
+        assertEquals(3, ponderer.nrPredictions());
+
+        String next = ".,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,.,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,.,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,0,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,.";
+        State  nextState = new State(next, Arrays.asList(new Player(0, 1, false, false), new Player(1, 0, false, false)), state, this.game);
+        assertTrue(ponderer.reuse(nextState));
+        assertEquals(0, ponderer.nrPredictions());
+    }
+
+    @Test
+    public void metricsPercentiles() {
+        long[] values = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20};
+        assertEquals(10, Metrics.percentile(values, 50));
+        assertEquals(19, Metrics.percentile(values, 95));
+        assertEquals(1, Metrics.percentile(new long[] {1}, 95));
+    }
+
+    @Test
+    public void protocolTokens() {
+        String input = "settings player_names player0,player1\r\n\nupdate player1 snippets 12\nupdate game field .,x,0";
+        ProtocolReader reader = new ProtocolReader(new java.io.ByteArrayInputStream(input.getBytes()));
+        assertTrue(reader.nextLine());
+        assertEquals(3, reader.nrTokens());
+        assertEquals("player0,player1", reader.toString(2));
+        assertTrue(reader.nextLine());
+        assertEquals(0, reader.nrTokens());
+        assertTrue(reader.nextLine());
+        assert(reader.is(1, ProtocolReader.word("player1")));
+        assertEquals(12, reader.toInt(3));
+        assertTrue(reader.nextLine());
+        byte[] field = new byte[reader.length(3)];
+        assertEquals(5, reader.copy(3, field));
+        assertEquals(".,x,0", new String(field));
+        assertFalse(reader.nextLine());
+    }
+
+    @Test
+    public void replayTranscript() {
+        String field = "C,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,.,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,0,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,C";
+        List<String> transcript = Arrays.asList(
+                "bot 0 send settings timebank 10000", "bot 0 send settings time_per_move 500",
+                "bot 0 send settings player_names player0,player1", "bot 0 send settings your_bot player0",
+                "bot 0 send settings your_botid 0", "bot 0 send settings field_width 20",
+                "bot 0 send settings field_height 14", "bot 0 send settings max_rounds 200",
+                "bot 1 send settings your_botid 1", "bot 0 send update game round 1",
+                "bot 0 send update game field " + field, "bot 0 send update player0 snippets 0",
+                "bot 0 send update player0 has_weapon false", "bot 0 send update player0 is_paralyzed false",
+                "bot 0 send update player1 snippets 0", "bot 0 send update player1 has_weapon false",
+                "bot 0 send update player1 is_paralyzed false", "bot 0 warning late", "bot 0 ask action move 10000");
+        assertEquals(0, Replay.firstBotId(transcript));
+
+        List<Replay.Turn> turns = new Replay().replay(transcript, 0, false);
+        assertEquals(1, turns.size());
+        assertEquals("up", turns.get(0).move);
+        assertEquals(0, Replay.diff(turns, Replay.readMoves(Arrays.asList("bot 0 up"), 0)).size());
+        assertEquals(1, Replay.diff(turns, Arrays.asList("up", "left")).size());
+    }
+
+    @Test
+    public void warmupStates() {
+        Warmup warmup = new Warmup(20, 14, 0);
+        State  state  = new State(warmup.field(), this.players, null, this.game);
+        assertNotEquals(null, state.getMyPlayer().getPosition());
+        assertTrue(warmup.run(System.nanoTime() + 50000000L) > 0);
+
+        warmup.stop();
+        assertEquals(0, warmup.run(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void reusedSearchMemory() {
+        String field = "C,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,x,x,.,x,x,x,x,x,x,.,x,x,x,x,x,.,.,x,.,.,.,.,.,x,x,x,x,x,x,.,.,.,.,.,x,.,.,x,.,x,x,x,.,.,.,x,x,.,.,.,x,x,x,.,x,.,.,.,.,.,.,x,x,x,.,x,x,.,x,x,x,.,.,.,.,.,.,x,x,x,.,x,.,.,.,.,.,.,.,.,x,.,x,x,x,.,E,.,.,x,.,x,.,x,x,x,x,x,x,.,x,.,x,.,.,.,x,x,0,x,.,.,.,x,x,x,x,x,x,.,.,.,x,1,x,x,.,.,.,x,x,x,.,x,x,x,x,x,x,.,x,x,x,.,.,.,.,x,.,E,.,.,.,.,.,.,.,.,.,.,.,.,.,.,x,.,.,x,x,x,.,x,x,x,x,x,x,x,x,x,x,.,x,x,x,.,.,x,x,x,.,.,.,.,.,.,.,.,.,.,.,.,x,x,x,.,.,x,x,x,.,x,x,x,.,x,x,.,x,x,x,.,x,x,x,.,.,.,.,.,.,.,.,.,.,x,x,.,.,.,.,.,.,.,.,C";
+        State  state = new State(field, this.players, null, this.game);
+        for (int cell = 0; cell < 20 * 14; cell++)
+            assertEquals(new ArrayList<>(state.getValidMoves(state.point(cell))), Arrays.asList(state.validMoves(cell)));
+
+        // A second search on the same engine finds the same paths
+        Search search = this.game.getSearch(state.getMaze());
+        Set<Point> targets = state.getEnemyPositions().keySet();
+        List<Path> paths = search.findShortestPathsPerDirection(state, myPlayer.getPosition(), targets, null, 0, null);
+        assertEquals(paths.toString(), search.findShortestPathsPerDirection(state, myPlayer.getPosition(), targets, null, 0, null).toString());
+
+        // A state with other bugs on the same engine gets its own arrival times
+        State  other = new State(field.replace('E', '.').replace("C,.,.,", "C,E,.,"), this.players, null, this.game);
+        assertSame(state.getMaze(), other.getMaze());
+        int[] times = state.getEnemyArrivalTimes();
+        int[] before = times.clone();
+        int[] otherTimes = other.getEnemyArrivalTimes();
+        assertNotSame(times, otherTimes);
+        assertArrayEquals(before, times);
+
+        int nrNodes = ArrivalTimes.nrNodes(state.getMaze());
+        assertArrayEquals(ArrivalTimes.ofEnemies(state, state.getMaze(), new int[nrNodes], new int[nrNodes], new int[nrNodes]), times);
+        assertArrayEquals(ArrivalTimes.ofEnemies(other, other.getMaze(), new int[nrNodes], new int[nrNodes], new int[nrNodes]), otherTimes);
+        assertEquals(0, otherTimes[other.cell(new Point(1, 0))]);
+        assertNotEquals(before[other.cell(new Point(1, 0))], otherTimes[other.cell(new Point(1, 0))]);
+    }
+
     //@Test
     //public void boilerplate() {
     //    String field = "";